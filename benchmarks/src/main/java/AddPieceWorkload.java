@@ -0,0 +1,44 @@
+import benchmark.Workload;
+
+import java.util.Random;
+
+
+public class AddPieceWorkload implements Workload {
+
+    private final TileType[] types = new TileType[Workloads.SAMPLE_COUNT];
+    private final int[] cols = new int[Workloads.SAMPLE_COUNT];
+    private final int[] rows = new int[Workloads.SAMPLE_COUNT];
+    private final int[] rotations = new int[Workloads.SAMPLE_COUNT];
+    private final BitBoard board = new BitBoard();
+    private BitBoard base;
+    private int index;
+
+    @Override
+    public void setUp(final long seed) {
+        //Every sample is a valid resting position on the same base board, which is
+        //restored before each lock.
+        final Random random = new Random(seed);
+        this.base = Workloads.randomBoard(random, 30);
+        int count = 0;
+        while (count < Workloads.SAMPLE_COUNT) {
+            final TileType type = Workloads.randomType(random);
+            final int rotation = random.nextInt(4);
+            final int col = random.nextInt(BitBoard.COL_COUNT) - type.getLeftInset(rotation);
+            if (base.isValidAndEmpty(type, col, type.getSpawnRow(), rotation)) {
+                types[count] = type;
+                cols[count] = col;
+                rows[count] = base.getDropRow(type, col, type.getSpawnRow(), rotation);
+                rotations[count] = rotation;
+                count++;
+            }
+        }
+    }
+
+    @Override
+    public int run() {
+        final int i = index++ & Workloads.SAMPLE_MASK;
+        board.copyFrom(base);
+        board.addPiece(types[i], cols[i], rows[i], rotations[i]);
+        return i;
+    }
+}
@@ -0,0 +1,39 @@
+import benchmark.Workload;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+
+public class BoardOverlayPaintWorkload implements Workload {
+
+    //The board with the performance overlay shown over it, whose graph moves on every
+    //frame and whose text changes once a second.
+    private final AffineTransform identity = new AffineTransform();
+    private PaintedGame game;
+    private PerfStats stats;
+    private BoardPanel panel;
+    private Graphics2D graphics;
+
+    @Override
+    public void setUp(final long seed) {
+        this.game = new PaintedGame(seed);
+        this.stats = new PerfStats();
+        stats.toggleVisible();
+        this.panel = new BoardPanel(game.getEngine(), game.getShown());
+        panel.setStats(stats);
+        panel.setSize(panel.getPreferredSize());
+        final BufferedImage image = new BufferedImage(panel.getWidth(), panel.getHeight(), BufferedImage.TYPE_INT_RGB);
+        this.graphics = image.createGraphics();
+    }
+
+    @Override
+    public int run() {
+        //Each paint stands for a frame of its own, as far as the stats can tell.
+        stats.recordFrame(System.nanoTime(), 0, 1, 0);
+        game.step();
+        graphics.setTransform(identity);
+        panel.paintComponent(graphics);
+        return panel.getWidth();
+    }
+}
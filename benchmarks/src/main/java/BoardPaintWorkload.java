@@ -0,0 +1,34 @@
+import benchmark.Workload;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+
+public class BoardPaintWorkload implements Workload {
+
+    private final AffineTransform identity = new AffineTransform();
+    private PaintedGame game;
+    private BoardPanel panel;
+    private Graphics2D graphics;
+
+    @Override
+    public void setUp(final long seed) {
+        this.game = new PaintedGame(seed);
+        this.panel = new BoardPanel(game.getEngine(), game.getShown());
+        panel.setSize(panel.getPreferredSize());
+        final BufferedImage image = new BufferedImage(panel.getWidth(), panel.getHeight(), BufferedImage.TYPE_INT_RGB);
+        this.graphics = image.createGraphics();
+    }
+
+    @Override
+    public int run() {
+        //Reuse one Graphics and only reset its transform, so the harness itself
+        //doesn't allocate and the gc profiler reports the painting code alone. The game
+        //moves on by a tick before every paint, like it does on screen.
+        game.step();
+        graphics.setTransform(identity);
+        panel.paintComponent(graphics);
+        return panel.getWidth();
+    }
+}
@@ -0,0 +1,40 @@
+import benchmark.Workload;
+
+import java.util.Random;
+
+
+public class CheckLinesWorkload implements Workload {
+
+    private final BitBoard[] boards = new BitBoard[Workloads.SAMPLE_COUNT];
+    private final BitBoard board = new BitBoard();
+    private int index;
+
+    @Override
+    public void setUp(final long seed) {
+        //Capture boards right after a lock, before their lines are checked, so roughly
+        //the usual share of them actually has rows to clear.
+        final Random random = new Random(seed);
+        final BitBoard play = new BitBoard();
+        int count = 0;
+        while (count < Workloads.SAMPLE_COUNT) {
+            final TileType type = Workloads.randomType(random);
+            final int rotation = random.nextInt(4);
+            final int col = random.nextInt(BitBoard.COL_COUNT) - type.getLeftInset(rotation);
+            if (!play.isValidAndEmpty(type, col, type.getSpawnRow(), rotation)) {
+                play.clear();
+                continue;
+            }
+            play.addPiece(type, col, play.getDropRow(type, col, type.getSpawnRow(), rotation), rotation);
+            boards[count] = new BitBoard();
+            boards[count].copyFrom(play);
+            play.checkLines();
+            count++;
+        }
+    }
+
+    @Override
+    public int run() {
+        board.copyFrom(boards[index++ & Workloads.SAMPLE_MASK]);
+        return board.checkLines();
+    }
+}
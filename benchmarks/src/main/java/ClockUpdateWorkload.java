@@ -0,0 +1,22 @@
+import benchmark.Workload;
+
+
+public class ClockUpdateWorkload implements Workload {
+
+    private Clock clock;
+    private long time;
+
+    @Override
+    public void setUp(final long seed) {
+        //Drive the clock with a fake time source, one frame per update, so the result
+        //doesn't depend on how fast the benchmark runs.
+        this.clock = new Clock(1.0f + (seed & 0xF), () -> time);
+    }
+
+    @Override
+    public int run() {
+        time += GameEngine.FRAME_NANOS;
+        clock.update();
+        return clock.hasElapsedCycle() ? 1 : 0;
+    }
+}
@@ -0,0 +1,39 @@
+import benchmark.Workload;
+
+import java.util.Random;
+
+
+public class DropRowWorkload implements Workload {
+
+    private final TileType[] types = new TileType[Workloads.SAMPLE_COUNT];
+    private final int[] cols = new int[Workloads.SAMPLE_COUNT];
+    private final int[] rotations = new int[Workloads.SAMPLE_COUNT];
+    private BitBoard board;
+    private int index;
+
+    @Override
+    public void setUp(final long seed) {
+        //The ghost search always starts from a valid position, so only keep the
+        //columns where the piece fits at its spawn row.
+        final Random random = new Random(seed);
+        this.board = Workloads.randomBoard(random, 30);
+        int count = 0;
+        while (count < Workloads.SAMPLE_COUNT) {
+            final TileType type = Workloads.randomType(random);
+            final int rotation = random.nextInt(4);
+            final int col = random.nextInt(BitBoard.COL_COUNT) - type.getLeftInset(rotation);
+            if (board.isValidAndEmpty(type, col, type.getSpawnRow(), rotation)) {
+                types[count] = type;
+                cols[count] = col;
+                rotations[count] = rotation;
+                count++;
+            }
+        }
+    }
+
+    @Override
+    public int run() {
+        final int i = index++ & Workloads.SAMPLE_MASK;
+        return board.getDropRow(types[i], cols[i], types[i].getSpawnRow(), rotations[i]);
+    }
+}
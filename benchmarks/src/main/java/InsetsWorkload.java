@@ -0,0 +1,29 @@
+import benchmark.Workload;
+
+import java.util.Random;
+
+
+public class InsetsWorkload implements Workload {
+
+    private final TileType[] types = new TileType[Workloads.SAMPLE_COUNT];
+    private final int[] rotations = new int[Workloads.SAMPLE_COUNT];
+    private int index;
+
+    @Override
+    public void setUp(final long seed) {
+        final Random random = new Random(seed);
+        for (int i = 0; i < Workloads.SAMPLE_COUNT; i++) {
+            types[i] = Workloads.randomType(random);
+            rotations[i] = random.nextInt(4);
+        }
+    }
+
+    @Override
+    public int run() {
+        final int i = index++ & Workloads.SAMPLE_MASK;
+        final TileType type = types[i];
+        final int rotation = rotations[i];
+        return type.getLeftInset(rotation) + type.getRightInset(rotation) + type.getTopInset(rotation)
+                + type.getBottomInset(rotation);
+    }
+}
@@ -0,0 +1,33 @@
+import benchmark.Workload;
+
+import java.util.Random;
+
+
+public class IsValidAndEmptyWorkload implements Workload {
+
+    private final TileType[] types = new TileType[Workloads.SAMPLE_COUNT];
+    private final int[] cols = new int[Workloads.SAMPLE_COUNT];
+    private final int[] rows = new int[Workloads.SAMPLE_COUNT];
+    private final int[] rotations = new int[Workloads.SAMPLE_COUNT];
+    private BitBoard board;
+    private int index;
+
+    @Override
+    public void setUp(final long seed) {
+        //A mix of valid and colliding positions, including some outside of the walls.
+        final Random random = new Random(seed);
+        this.board = Workloads.randomBoard(random, 40);
+        for (int i = 0; i < Workloads.SAMPLE_COUNT; i++) {
+            types[i] = Workloads.randomType(random);
+            cols[i] = random.nextInt(BitBoard.COL_COUNT + 4) - 2;
+            rows[i] = random.nextInt(BitBoard.ROW_COUNT);
+            rotations[i] = random.nextInt(4);
+        }
+    }
+
+    @Override
+    public int run() {
+        final int i = index++ & Workloads.SAMPLE_MASK;
+        return board.isValidAndEmpty(types[i], cols[i], rows[i], rotations[i]) ? 1 : 0;
+    }
+}
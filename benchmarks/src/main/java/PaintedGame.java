@@ -0,0 +1,62 @@
+import java.io.IOException;
+
+
+public class PaintedGame {
+
+    //A game that keeps moving while it's being painted, so the painters see new scores,
+    //levels, pieces and ghosts all the time rather than the same frame over and over.
+    //The computer player's inputs are worked out up front, and the game is played back
+    //from a snapshot of its start, which it goes back to whenever the inputs run out.
+    //None of that allocates once it's set up. Like the game loop does, every step is
+    //published for the painters to copy.
+    private static final int TRACE_TICKS = 1 << 14;
+    private final GameEngine engine;
+    private final SharedFrame shown;
+    private final Snapshot start;
+    private final Input[] inputs;
+    private int index;
+
+    public PaintedGame(final long seed) {
+        this.engine = Workloads.midGameEngine(seed, 5000);
+        this.start = new Snapshot();
+        engine.save(start);
+        this.shown = new SharedFrame();
+        shown.publish(engine);
+        this.inputs = new Input[TRACE_TICKS];
+
+        final GameEngine player = new GameEngine(seed);
+        load(player);
+        final AiPolicy ai = new AiPolicy();
+        for (int i = 0; i < TRACE_TICKS; i++) {
+            final Input input = player.isGameOver() ? Input.START : ai.nextInput(player);
+            inputs[i] = input;
+            player.step(input);
+        }
+    }
+
+    public GameEngine getEngine() {
+        return engine;
+    }
+
+    public SharedFrame getShown() {
+        return shown;
+    }
+
+    public void step() {
+        if (index == TRACE_TICKS) {
+            index = 0;
+            load(engine);
+        }
+        engine.step(inputs[index++]);
+        shown.publish(engine);
+    }
+
+    private void load(final GameEngine target) {
+        start.rewind();
+        try {
+            target.load(start);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
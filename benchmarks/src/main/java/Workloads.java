@@ -0,0 +1,51 @@
+import java.util.Random;
+
+
+public class Workloads {
+
+    //The number of precomputed inputs each workload cycles through. This is a power
+    //of two so the index can wrap around with a mask.
+    public static final int SAMPLE_COUNT = 1024;
+    public static final int SAMPLE_MASK = SAMPLE_COUNT - 1;
+    private static final TileType[] TYPES = TileType.values();
+
+    private Workloads() {
+    }
+
+    public static TileType randomType(final Random random) {
+        return TYPES[random.nextInt(TYPES.length)];
+    }
+
+    public static BitBoard randomBoard(final Random random, final int pieces) {
+        //Drop random pieces straight down at random columns. Pieces that don't fit
+        //are skipped, so the result is always a legal, partially filled board.
+        final BitBoard board = new BitBoard();
+        for (int i = 0; i < pieces; i++) {
+            final TileType type = randomType(random);
+            final int rotation = random.nextInt(4);
+            final int col = random.nextInt(BitBoard.COL_COUNT) - type.getLeftInset(rotation);
+            final int row = type.getSpawnRow();
+            if (board.isValidAndEmpty(type, col, row, rotation)) {
+                board.addPiece(type, col, board.getDropRow(type, col, row, rotation), rotation);
+                board.checkLines();
+            }
+        }
+        return board;
+    }
+
+    public static GameEngine midGameEngine(final long seed, final int ticks) {
+        //Play a seeded game with random inputs until it has some history, restarting
+        //if it happens to end too early, so the painters have a realistic board.
+        final Random random = new Random(seed);
+        final Input[] inputs = {Input.MOVE_LEFT, Input.MOVE_RIGHT, Input.ROTATE_CLOCKWISE, Input.DROP};
+        final GameEngine engine = new GameEngine(seed);
+        engine.step(Input.START);
+        for (int i = 0; i < ticks; i++) {
+            engine.step(random.nextInt(3) == 0 ? inputs[random.nextInt(inputs.length)] : null);
+            if (engine.isGameOver()) {
+                engine.step(Input.START);
+            }
+        }
+        return engine;
+    }
+}
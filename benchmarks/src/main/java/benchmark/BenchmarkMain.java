@@ -0,0 +1,53 @@
+package benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+
+public class BenchmarkMain {
+
+    //The paint path has to allocate nothing once it's warmed up, so these workloads
+    //fail the run if they average more than a fraction of a byte per operation. (The
+    //harness itself accounts for a tiny amount, which is why it isn't exactly zero.)
+    //The game's own build runs the same check without JMH (PaintAllocationCheck), so
+    //this is the more thorough measurement rather than the only one.
+    private static final List<String> ZERO_ALLOCATION = Arrays.asList("BoardPaint", "BoardOverlayPaint", "SidePaint");
+    private static final double ALLOCATION_LIMIT = 0.5;
+
+    public static void main(final String[] args) throws RunnerException, CommandLineOptionException {
+        //Always attach the GC profiler, so every run reports the allocation rate
+        //(gc.alloc.rate.norm is bytes per operation) next to the throughput. Any
+        //regular JMH command line options can still be passed in.
+        final Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(GameBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+
+        boolean failed = false;
+        for (final RunResult result : results) {
+            final String workload = result.getParams().getParam("workload");
+            final Result allocation = result.getSecondaryResults().get("gc.alloc.rate.norm");
+            if (ZERO_ALLOCATION.contains(workload) && allocation != null
+                    && allocation.getScore() > ALLOCATION_LIMIT) {
+                System.err.printf(Locale.ROOT, "%s allocates %.1f bytes per paint, expected none%n", workload,
+                        allocation.getScore());
+                failed = true;
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
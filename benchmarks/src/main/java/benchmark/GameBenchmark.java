@@ -0,0 +1,45 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GameBenchmark {
+
+    @Param({"IsValidAndEmpty", "AddPiece", "CheckLines", "DropRow", "Insets", "ClockUpdate", "BoardPaint",
+            "BoardOverlayPaint", "SidePaint"})
+    private String workload;
+
+    @Param("42")
+    private long seed;
+
+    private Workload instance;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        instance = (Workload) Class.forName(workload + "Workload").getDeclaredConstructor().newInstance();
+        instance.setUp(seed);
+    }
+
+    @Benchmark
+    public int run() {
+        return instance.run();
+    }
+}
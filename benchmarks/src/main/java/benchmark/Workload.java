@@ -0,0 +1,11 @@
+package benchmark;
+
+//JMH refuses benchmarks in the default package, and a named package cannot see the
+//game classes, which all live in the default package. The workloads are therefore
+//written in the default package next to the game and are loaded by name.
+public interface Workload {
+
+    void setUp(long seed);
+
+    int run();
+}
@@ -0,0 +1,186 @@
+public class AiPolicy implements BotPolicy {
+
+    //Heuristic weights for a resting board. Lines are rewarded, everything else is
+    //penalized. These are the well known weights tuned for this exact feature set.
+    public static final double HEIGHT_WEIGHT = -0.510066;
+    public static final double LINES_WEIGHT = 0.760666;
+    public static final double HOLES_WEIGHT = -0.35663;
+    public static final double BUMPINESS_WEIGHT = -0.184483;
+    //The score of a placement that leaves no room to spawn the next piece.
+    private static final double GAME_OVER_SCORE = -1e9;
+    private final double heightWeight;
+    private final double linesWeight;
+    private final double holesWeight;
+    private final double bumpinessWeight;
+    private final boolean lookahead;
+    private final PlacementSearch currentSearch = new PlacementSearch();
+    private final PlacementSearch nextSearch = new PlacementSearch();
+    private final BitBoard currentBoard = new BitBoard();
+    private final BitBoard nextBoard = new BitBoard();
+    private final int[] heights = new int[BitBoard.COL_COUNT];
+    private final int[] path = new int[PlacementSearch.getMaxPathLength()];
+    private int pathLength;
+    private int pathIndex;
+    private int start;
+    private int piece = -1;
+
+    public AiPolicy() {
+        this(HEIGHT_WEIGHT, LINES_WEIGHT, HOLES_WEIGHT, BUMPINESS_WEIGHT, true);
+    }
+
+    public AiPolicy(final double heightWeight, final double linesWeight, final double holesWeight,
+            final double bumpinessWeight, final boolean lookahead) {
+        this.heightWeight = heightWeight;
+        this.linesWeight = linesWeight;
+        this.holesWeight = holesWeight;
+        this.bumpinessWeight = bumpinessWeight;
+        this.lookahead = lookahead;
+    }
+
+    @Override
+    public Input nextInput(final GameEngine engine) {
+        if (engine.isNewGame() || engine.isGameOver() || engine.isPaused()) {
+            return null;
+        }
+
+        //Steps down the path are taken by gravity rather than by an input, so skip
+        //past every one of them the piece has already fallen through.
+        final int current = PlacementSearch.encode(engine.getPieceCol(), engine.getPieceRow(),
+                engine.getPieceRotation());
+        while (pathIndex < pathLength && path[pathIndex] == current) {
+            pathIndex++;
+        }
+
+        //Plan a path whenever a new piece spawns, and plan again from wherever the piece
+        //is now if it left the last plan (gravity was faster than expected, or the
+        //player pressed a key).
+        final int expected = pathIndex == 0 ? start : path[pathIndex - 1];
+        if (engine.getPieces() != piece || current != expected) {
+            this.piece = engine.getPieces();
+            plan(engine, current);
+        }
+
+        if (pathIndex == pathLength) {
+            return Input.HARD_DROP;
+        }
+        final int next = path[pathIndex];
+        final int col = PlacementSearch.getCol(next);
+        final int rotation = PlacementSearch.getRotation(next);
+        if (rotation != engine.getPieceRotation()) {
+            pathIndex++;
+            return rotation == ((engine.getPieceRotation() + 1) & 3) ? Input.ROTATE_CLOCKWISE
+                    : Input.ROTATE_ANTICLOCKWISE;
+        } else if (col != engine.getPieceCol()) {
+            pathIndex++;
+            return col < engine.getPieceCol() ? Input.MOVE_LEFT : Input.MOVE_RIGHT;
+        }
+
+        //The next step is a fall. Wait for gravity, unless nothing but falling is left,
+        //in which case the piece may as well be hard dropped.
+        return isOnlyFalling(col, rotation) ? Input.HARD_DROP : null;
+    }
+
+    private boolean isOnlyFalling(final int col, final int rotation) {
+        for (int i = pathIndex; i < pathLength; i++) {
+            if (PlacementSearch.getCol(path[i]) != col || PlacementSearch.getRotation(path[i]) != rotation) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void plan(final GameEngine engine, final int current) {
+        final int best = findBestPlacement(engine.getBoard(), engine.getPieceType(), engine.getPieceCol(),
+                engine.getPieceRow(), engine.getPieceRotation(), engine.getNextPieceType());
+        this.start = current;
+        this.pathIndex = 0;
+        this.pathLength = best == -1 ? 0 : currentSearch.getPath(best, path);
+    }
+
+    public int findBestPlacement(final BitBoard board, final TileType type, final int col, final int row,
+            final int rotation, final TileType nextType) {
+        //Try every reachable placement of the current piece. With lookahead, each one
+        //is scored by the best placement of the next piece on the resulting board.
+        final int count = currentSearch.search(board, type, col, row, rotation);
+        int best = -1;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            final int state = currentSearch.getLanding(i);
+            if (isDuplicate(currentSearch, type, i)) {
+                continue;
+            }
+            currentBoard.copyFrom(board);
+            currentBoard.addPiece(type, PlacementSearch.getCol(state), PlacementSearch.getRow(state),
+                    PlacementSearch.getRotation(state));
+            final int lines = currentBoard.checkLines();
+            final double score = lookahead && nextType != null ? scoreNext(nextType, lines)
+                    : evaluate(currentBoard, lines);
+            if (score > bestScore) {
+                bestScore = score;
+                best = state;
+            }
+        }
+        return best;
+    }
+
+    private double scoreNext(final TileType type, final int lines) {
+        final int count = nextSearch.search(currentBoard, type, type.getSpawnColumn(), type.getSpawnRow(), 0);
+        if (count == 0) {
+            return GAME_OVER_SCORE;
+        }
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            final int state = nextSearch.getLanding(i);
+            if (isDuplicate(nextSearch, type, i)) {
+                continue;
+            }
+            nextBoard.copyFrom(currentBoard);
+            nextBoard.addPiece(type, PlacementSearch.getCol(state), PlacementSearch.getRow(state),
+                    PlacementSearch.getRotation(state));
+            bestScore = Math.max(bestScore, evaluate(nextBoard, lines + nextBoard.checkLines()));
+        }
+        return bestScore;
+    }
+
+    private boolean isDuplicate(final PlacementSearch search, final TileType type, final int landing) {
+        //Only the first landing with a given footprint is scored. There are rarely more
+        //than a few dozen landings, so a linear scan is cheaper than a hash set here.
+        final long footprint = PlacementSearch.getFootprint(type, search.getLanding(landing));
+        for (int i = 0; i < landing; i++) {
+            if (PlacementSearch.getFootprint(type, search.getLanding(i)) == footprint) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public double evaluate(final BitBoard board, final int lines) {
+        //Walk the rows from the top. A column's height is set by the first tile found in
+        //it, and every empty cell below a column's first tile is a hole.
+        int covered = 0;
+        int holes = 0;
+        for (int y = 0; y < BitBoard.ROW_COUNT; y++) {
+            final int bits = board.getRowBits(y);
+            int fresh = bits & ~covered;
+            while (fresh != 0) {
+                heights[Integer.numberOfTrailingZeros(fresh)] = BitBoard.ROW_COUNT - y;
+                fresh &= fresh - 1;
+            }
+            holes += Integer.bitCount(covered & ~bits);
+            covered |= bits;
+        }
+
+        int height = 0;
+        int bumpiness = 0;
+        for (int x = 0; x < BitBoard.COL_COUNT; x++) {
+            if ((covered & (1 << x)) == 0) {
+                heights[x] = 0;
+            }
+            height += heights[x];
+            if (x > 0) {
+                bumpiness += Math.abs(heights[x] - heights[x - 1]);
+            }
+        }
+        return heightWeight * height + linesWeight * lines + holesWeight * holes + bumpinessWeight * bumpiness;
+    }
+}
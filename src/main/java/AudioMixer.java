@@ -0,0 +1,155 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+public class AudioMixer implements SoundPlayer, Runnable {
+
+    //16 bit little endian stereo, which is what the effects are synthesized in and
+    //what the music is converted to.
+    public static final AudioFormat FORMAT = new AudioFormat(SoundEffect.SAMPLE_RATE, 16, 2, true, false);
+    private static final int FRAME_SIZE = 4;
+    //The mixer works on chunks of about 6ms, and the line holds three of them. An effect
+    //is mixed into the next chunk after it's triggered, so it reaches the speaker within
+    //about four chunks, or 23ms.
+    private static final int CHUNK_SIZE = 256 * FRAME_SIZE;
+    private static final int LINE_BUFFER_SIZE = CHUNK_SIZE * 3;
+    private static final double BYTES_PER_NANO = SoundEffect.SAMPLE_RATE * FRAME_SIZE / 1e9;
+    //At most this many effects play at once. Any more replace the oldest one.
+    private static final int VOICE_COUNT = 8;
+    private static final SoundEffect[] EFFECTS = SoundEffect.values();
+    private final MusicPlayer music;
+    private final PerfStats stats;
+    private final byte[] chunk;
+    //The effects the game loop asked for. Each effect has a counter that play() bumps,
+    //and the mixer starts the effect once if there are any bumps it hasn't seen yet.
+    //Any number of bumps between two chunks start a single voice, since they would all
+    //start at the same sample and only sound louder. Neither side ever waits for the
+    //other.
+    private final AtomicIntegerArray triggers;
+    private final AtomicLongArray triggerTimes;
+    private final int[] started;
+    private final int[] voiceEffects;
+    private final int[] voicePositions;
+    private int nextVoice;
+    private volatile float volume;
+    private volatile boolean isMuted;
+
+    public AudioMixer(final MusicPlayer music, final PerfStats stats) {
+        this.music = music;
+        this.stats = stats;
+        this.chunk = new byte[CHUNK_SIZE];
+        this.triggers = new AtomicIntegerArray(EFFECTS.length);
+        this.triggerTimes = new AtomicLongArray(EFFECTS.length);
+        this.started = new int[EFFECTS.length];
+        this.voiceEffects = new int[VOICE_COUNT];
+        this.voicePositions = new int[VOICE_COUNT];
+        this.volume = 1.0f;
+        for (int i = 0; i < VOICE_COUNT; i++) {
+            voiceEffects[i] = -1;
+        }
+    }
+
+    public void start() {
+        final Thread thread = new Thread(this, "Tetris Audio");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    @Override
+    public void play(final SoundEffect effect) {
+        triggerTimes.lazySet(effect.ordinal(), System.nanoTime());
+        triggers.incrementAndGet(effect.ordinal());
+    }
+
+    @Override
+    public void run() {
+        //Sound is optional, so without a sound device we just say so and carry on.
+        final SourceDataLine line;
+        try {
+            line = AudioSystem.getSourceDataLine(FORMAT);
+            line.open(FORMAT, LINE_BUFFER_SIZE);
+        } catch (final LineUnavailableException | IllegalArgumentException e) {
+            System.err.println("Sound disabled: " + e);
+            return;
+        }
+        line.start();
+        while (true) {
+            music.read(chunk, CHUNK_SIZE);
+            startVoices(line);
+            mix();
+            line.write(chunk, 0, CHUNK_SIZE);
+        }
+    }
+
+    private void startVoices(final SourceDataLine line) {
+        for (int effect = 0; effect < EFFECTS.length; effect++) {
+            final int count = triggers.get(effect);
+            if (count == started[effect]) {
+                continue;
+            }
+            started[effect] = count;
+            voiceEffects[nextVoice] = effect;
+            voicePositions[nextVoice] = 0;
+            nextVoice = (nextVoice + 1) % VOICE_COUNT;
+
+            //The effect will be heard once everything already queued in the line has
+            //played, so its latency is the time it waited for this chunk plus that.
+            if (stats != null) {
+                final int queued = line.getBufferSize() - line.available();
+                stats.recordSoundLatency(System.nanoTime() - triggerTimes.get(effect) + (long) (queued / BYTES_PER_NANO));
+            }
+        }
+    }
+
+    private void mix() {
+        final float gain = isMuted ? 0.0f : volume;
+        for (int i = 0; i < CHUNK_SIZE; i += 2) {
+            int sample = (short) ((chunk[i] & 0xFF) | (chunk[i + 1] << 8));
+            for (int voice = 0; voice < VOICE_COUNT; voice++) {
+                final int effect = voiceEffects[voice];
+                if (effect >= 0) {
+                    final byte[] samples = EFFECTS[effect].getSamples();
+                    final int position = voicePositions[voice] + i;
+                    if (position + 1 < samples.length) {
+                        sample += (short) ((samples[position] & 0xFF) | (samples[position + 1] << 8));
+                    }
+                }
+            }
+            sample = (int) (sample * gain);
+            sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+            chunk[i] = (byte) sample;
+            chunk[i + 1] = (byte) (sample >> 8);
+        }
+
+        //Move every playing effect on by a chunk, and free up the ones that are done.
+        for (int voice = 0; voice < VOICE_COUNT; voice++) {
+            if (voiceEffects[voice] >= 0) {
+                voicePositions[voice] += CHUNK_SIZE;
+                if (voicePositions[voice] >= EFFECTS[voiceEffects[voice]].getSamples().length) {
+                    voiceEffects[voice] = -1;
+                }
+            }
+        }
+    }
+
+    public void setVolume(final float volume) {
+        this.volume = Math.max(0.0f, Math.min(1.0f, volume));
+    }
+
+    public float getVolume() {
+        return volume;
+    }
+
+    public void setMuted(final boolean muted) {
+        this.isMuted = muted;
+    }
+
+    public boolean isMuted() {
+        return isMuted;
+    }
+}
@@ -0,0 +1,63 @@
+import java.io.IOException;
+
+
+public class BagGenerator implements PieceGenerator {
+
+    private static final int TYPE_COUNT = TileType.values().length;
+    private static final int TYPE_BITS = 3;
+    private final Rng random;
+    //The bag holds one of every piece. The first remaining entries haven't been dealt
+    //yet, and each deal swaps a random one of them to the end, which shuffles the bag
+    //as it's emptied.
+    private final byte[] bag;
+    private int remaining;
+
+    public BagGenerator(final Rng random) {
+        this.random = random;
+        this.bag = new byte[TYPE_COUNT];
+        reset();
+    }
+
+    @Override
+    public int next() {
+        if (remaining == 0) {
+            remaining = TYPE_COUNT;
+        }
+        final int pick = random.nextInt(remaining);
+        final byte type = bag[pick];
+        bag[pick] = bag[--remaining];
+        bag[remaining] = type;
+        return type;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            bag[i] = (byte) i;
+        }
+        this.remaining = TYPE_COUNT;
+    }
+
+    @Override
+    public void save(final Snapshot snapshot) {
+        snapshot.write(remaining, TYPE_BITS);
+        for (final byte type : bag) {
+            snapshot.write(type, TYPE_BITS);
+        }
+    }
+
+    @Override
+    public void load(final Snapshot snapshot) throws IOException {
+        //The bag has to hold every piece exactly once, or it would deal some of them
+        //more often than others from then on.
+        this.remaining = snapshot.readInt(TYPE_BITS);
+        int seen = 0;
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            bag[i] = (byte) snapshot.readInt(TYPE_BITS);
+            seen |= bag[i] < TYPE_COUNT ? 1 << bag[i] : 0;
+        }
+        if (remaining > TYPE_COUNT || seen != (1 << TYPE_COUNT) - 1) {
+            throw new IOException("Corrupt snapshot");
+        }
+    }
+}
@@ -0,0 +1,222 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+public class BatchSimulator {
+
+    //The number of games a single fork-join leaf plays sequentially. Large enough to
+    //amortize the task overhead, small enough to keep every core busy until the end.
+    private static final int GAMES_PER_TASK = 64;
+    //Games that never end (a policy that keeps the board clean forever) are cut off
+    //after this many frames; one hour of game time by default.
+    private static final long DEFAULT_MAX_TICKS = 60L * 60L * 1000L / GameEngine.FRAME_TIME;
+    private final long games;
+    private final long seed;
+    private final String policy;
+    private final Randomizer randomizer;
+    private final long maxTicks;
+    //If set, every game is recorded and its replay appended here.
+    private final OutputStream archive;
+
+    public BatchSimulator(final long games, final long seed, final String policy, final Randomizer randomizer,
+            final long maxTicks, final OutputStream archive) {
+        this.games = games;
+        this.seed = seed;
+        this.policy = policy;
+        this.randomizer = randomizer;
+        this.maxTicks = maxTicks;
+        this.archive = archive;
+    }
+
+    public Stats run(final ForkJoinPool pool) {
+        return pool.invoke(new GameTask(0, games));
+    }
+
+    private void play(final long game, final Stats stats) {
+        //Every game gets its own seed derived from the batch seed, so any single game
+        //can be reproduced on its own regardless of how the batch was split up.
+        final long gameSeed = mix(seed + game);
+        final GameEngine engine = new GameEngine(gameSeed, randomizer, GameEngine.DEFAULT_PREVIEW);
+        final BotPolicy bot = createPolicy(policy, gameSeed);
+        final Replay replay = archive == null ? null : new Replay(gameSeed, randomizer, GameEngine.DEFAULT_PREVIEW);
+        if (replay != null) {
+            engine.addListener(replay);
+        }
+        step(engine, Input.START, replay);
+        while (!engine.isGameOver() && engine.getTick() < maxTicks) {
+            step(engine, bot.nextInput(engine), replay);
+        }
+        if (replay != null) {
+            replay.finish(engine);
+            synchronized (archive) {
+                try {
+                    replay.write(archive);
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        stats.score.record(engine.getScore());
+        stats.lines.record(engine.getLines());
+        stats.pieces.record(engine.getPieces());
+        stats.level.record(engine.getLevel());
+        stats.ticks.record(engine.getTick());
+    }
+
+    private static void step(final GameEngine engine, final Input input, final Replay replay) {
+        if (replay == null) {
+            engine.step(input);
+            return;
+        }
+        if (input != null) {
+            replay.record(engine.getTick(), input);
+            engine.handleInput(input);
+        }
+        engine.step();
+    }
+
+    public static BotPolicy createPolicy(final String name, final long seed) {
+        switch (name) {
+            case "random":
+                return new RandomPolicy(seed);
+            case "ai":
+                return new AiPolicy();
+            default:
+                //Anything else is taken as the name of a BotPolicy class with a
+                //constructor that takes the seed.
+                try {
+                    return (BotPolicy) Class.forName(name).getConstructor(long.class).newInstance(seed);
+                } catch (final ReflectiveOperationException e) {
+                    throw new IllegalArgumentException("Unknown bot policy: " + name, e);
+                }
+        }
+    }
+
+    private static long mix(long z) {
+        //SplitMix64 finalizer, so neighbouring game numbers get unrelated seeds.
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private class GameTask extends RecursiveTask<Stats> {
+
+        private final long from;
+        private final long to;
+
+        private GameTask(final long from, final long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Stats compute() {
+            if (to - from <= GAMES_PER_TASK) {
+                final Stats stats = new Stats();
+                for (long game = from; game < to; game++) {
+                    play(game, stats);
+                }
+                return stats;
+            }
+            final long middle = (from + to) >>> 1;
+            final GameTask left = new GameTask(from, middle);
+            left.fork();
+            final Stats stats = new GameTask(middle, to).compute();
+            stats.merge(left.join());
+            return stats;
+        }
+    }
+
+    public static class Stats {
+
+        private final Histogram score = new Histogram();
+        private final Histogram lines = new Histogram();
+        private final Histogram pieces = new Histogram();
+        private final Histogram level = new Histogram();
+        private final Histogram ticks = new Histogram();
+
+        private void merge(final Stats other) {
+            score.merge(other.score);
+            lines.merge(other.lines);
+            pieces.merge(other.pieces);
+            level.merge(other.level);
+            ticks.merge(other.ticks);
+        }
+
+        public void print() {
+            System.out.printf(Locale.ROOT, "%-8s %12s %10s %10s %10s %10s %10s%n",
+                    "", "mean", "min", "p50", "p90", "p99", "max");
+            print("score", score, 1.0);
+            print("lines", lines, 1.0);
+            print("pieces", pieces, 1.0);
+            print("level", level, 1.0);
+            print("seconds", ticks, GameEngine.FRAME_TIME / 1000.0);
+        }
+
+        private static void print(final String name, final Histogram histogram, final double scale) {
+            System.out.printf(Locale.ROOT, "%-8s %12.2f %10.1f %10.1f %10.1f %10.1f %10.1f%n", name,
+                    histogram.getMean() * scale, histogram.getMin() * scale, histogram.getPercentile(50) * scale,
+                    histogram.getPercentile(90) * scale, histogram.getPercentile(99) * scale,
+                    histogram.getMax() * scale);
+        }
+    }
+
+    public static void main(final String[] args) throws IOException {
+        long games = 10000;
+        long seed = 1;
+        String policy = "random";
+        Randomizer randomizer = Randomizer.BAG;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long maxTicks = DEFAULT_MAX_TICKS;
+        String archivePath = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--games":
+                    games = Long.parseLong(args[i + 1]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[i + 1]);
+                    break;
+                case "--policy":
+                    policy = args[i + 1];
+                    break;
+                case "--randomizer":
+                    randomizer = Randomizer.valueOf(args[i + 1].toUpperCase(Locale.ROOT));
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--max-ticks":
+                    maxTicks = Long.parseLong(args[i + 1]);
+                    break;
+                case "--archive":
+                    archivePath = args[i + 1];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        final long start = System.nanoTime();
+        final Stats stats;
+        try (final OutputStream archive = archivePath == null ? null
+                : new BufferedOutputStream(Files.newOutputStream(Paths.get(archivePath)), 1 << 16)) {
+            stats = new BatchSimulator(games, seed, policy, randomizer, maxTicks, archive).run(pool);
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        System.out.printf(Locale.ROOT, "%d games with policy '%s' and %s pieces on %d threads in %.2f s"
+                + " (%.0f games/s)%n", games, policy, randomizer.name().toLowerCase(Locale.ROOT), threads, seconds,
+                games / seconds);
+        stats.print();
+    }
+}
@@ -0,0 +1,248 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+
+public class BitBoard {
+
+    public static final int COL_COUNT = 10;
+    public static final int ROW_COUNT = 22;
+    //Every row is packed into a single int with one bit per column. The playfield is
+    //shifted up by WALL_WIDTH bits and every bit outside of it is permanently set, so
+    //the walls collide with a piece exactly like locked tiles do.
+    private static final int WALL_WIDTH = 4;
+    private static final int FIELD_MASK = ((1 << COL_COUNT) - 1) << WALL_WIDTH;
+    private static final int EMPTY_ROW = ~FIELD_MASK;
+    private static final int FULL_ROW = -1;
+    private static final TileType[] TYPES = TileType.values();
+    //The color of the garbage rows an opponent sends in the versus mode. They aren't
+    //part of any piece, so they get the color after the last TileType.
+    public static final int GARBAGE = TYPES.length + 1;
+    //Enough bits to hold any color, garbage included.
+    private static final int COLOR_BITS = 4;
+    private final int[] rows;
+    //The color plane is only read for painting. 0 means empty, otherwise the value
+    //is the ordinal of the TileType plus one.
+    private final byte[] colors;
+    //The row of the highest tile in every column, or ROW_COUNT if the column is
+    //empty. Kept up to date as pieces are added and lines are cleared.
+    private final int[] heights;
+    //The rows the last checkLines() call cleared, from the bottom up, as they were
+    //numbered before the rows above them moved down.
+    private final int[] clearedRows;
+
+    public BitBoard() {
+        this.rows = new int[ROW_COUNT];
+        this.colors = new byte[ROW_COUNT * COL_COUNT];
+        this.heights = new int[COL_COUNT];
+        this.clearedRows = new int[ROW_COUNT];
+        clear();
+    }
+
+    public void clear() {
+        Arrays.fill(rows, EMPTY_ROW);
+        Arrays.fill(colors, (byte) 0);
+        Arrays.fill(heights, ROW_COUNT);
+    }
+
+    public void copyFrom(final BitBoard other) {
+        System.arraycopy(other.rows, 0, rows, 0, ROW_COUNT);
+        System.arraycopy(other.colors, 0, colors, 0, colors.length);
+        System.arraycopy(other.heights, 0, heights, 0, COL_COUNT);
+    }
+
+    public boolean isValidAndEmpty(final TileType type, final int x, final int y, final int rotation) {
+        //Make sure the shifted piece masks stay inside of the int. Anything further out
+        //than this is beyond the walls anyway.
+        final int shift = x + WALL_WIDTH;
+        final int dimension = type.getDimension();
+        if (shift < 0 || shift > Integer.SIZE - dimension) {
+            return false;
+        }
+
+        //Check every non-empty row of the piece against the board row it would cover. A
+        //piece row hanging above the top or below the bottom of the board is invalid.
+        for (int row = 0; row < dimension; row++) {
+            final int mask = type.getRowMask(rotation, row);
+            if (mask == 0) {
+                continue;
+            }
+            final int line = y + row;
+            if (line < 0 || line >= ROW_COUNT || (rows[line] & (mask << shift)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int findKick(final TileType type, final int x, final int y, final int rotation, final int newRotation) {
+        //Rotating a piece next to a wall or other tiles would often leave it overlapping
+        //something, so we try each of the piece's wall kicks in order and return the
+        //first one whose offset position is valid, or -1 if none of them are. The first
+        //kick is always (0, 0), which is the plain rotation in place.
+        final int kicks = type.getKickCount(rotation, newRotation);
+        for (int kick = 0; kick < kicks; kick++) {
+            if (isValidAndEmpty(type, x + type.getKickX(rotation, newRotation, kick),
+                    y + type.getKickY(rotation, newRotation, kick), newRotation)) {
+                return kick;
+            }
+        }
+        return -1;
+    }
+
+    public int getDropRow(final TileType type, final int x, final int y, final int rotation) {
+        //As long as every column of the piece is still above the highest tile in that
+        //column, the piece falls until one of its columns comes to rest on the surface.
+        int drop = ROW_COUNT;
+        for (int col = 0; col < type.getDimension(); col++) {
+            final int bottom = type.getColumnBottom(rotation, col);
+            if (bottom < 0) {
+                continue;
+            }
+            final int surface = heights[x + col];
+            if (y + bottom >= surface) {
+                return scanDropRow(type, x, y, rotation);
+            }
+            drop = Math.min(drop, surface - 1 - bottom);
+        }
+        return drop;
+    }
+
+    private int scanDropRow(final TileType type, final int x, final int y, final int rotation) {
+        //The piece has been tucked in below an overhang, so we simply take the current
+        //position and move down until we hit a row that would cause a collision.
+        int row = y;
+        while (isValidAndEmpty(type, x, row + 1, rotation)) {
+            row++;
+        }
+        return row;
+    }
+
+    public void addPiece(final TileType type, final int x, final int y, final int rotation) {
+        final byte color = (byte) (type.ordinal() + 1);
+        for (int row = 0; row < type.getDimension(); row++) {
+            final int mask = type.getRowMask(rotation, row);
+            if (mask != 0) {
+                rows[y + row] |= mask << (x + WALL_WIDTH);
+            }
+        }
+        for (int cell = 0; cell < type.getCellCount(rotation); cell++) {
+            final int col = x + type.getCellX(rotation, cell);
+            final int row = y + type.getCellY(rotation, cell);
+            colors[row * COL_COUNT + col] = color;
+            heights[col] = Math.min(heights[col], row);
+        }
+    }
+
+    public int checkLines() {
+        int completedLines = 0;
+
+        //Walk the board from the bottom up. Full rows are skipped, and every other row
+        //is moved down by the number of full rows found below it so far.
+        for (int row = ROW_COUNT - 1; row >= 0; row--) {
+            if (rows[row] == FULL_ROW) {
+                clearedRows[completedLines] = row;
+                completedLines++;
+            } else if (completedLines > 0) {
+                rows[row + completedLines] = rows[row];
+                System.arraycopy(colors, row * COL_COUNT, colors, (row + completedLines) * COL_COUNT, COL_COUNT);
+            }
+        }
+
+        //The rows at the top that were shifted down are now empty.
+        for (int row = 0; row < completedLines; row++) {
+            rows[row] = EMPTY_ROW;
+            Arrays.fill(colors, row * COL_COUNT, (row + 1) * COL_COUNT, (byte) 0);
+        }
+
+        //Everything only ever moves down, so each column's new highest tile is at or
+        //below its old one.
+        if (completedLines > 0) {
+            for (int col = 0; col < COL_COUNT; col++) {
+                int row = heights[col];
+                while (row < ROW_COUNT && !isOccupied(col, row)) {
+                    row++;
+                }
+                heights[col] = row;
+            }
+        }
+        return completedLines;
+    }
+
+    public boolean addGarbageRows(final int count, final int hole) {
+        //Push everything up by count rows and fill the rows that open up at the bottom,
+        //leaving an empty cell in the hole column. Returns true if any tiles were pushed
+        //off the top of the board.
+        final int shift = Math.min(count, ROW_COUNT);
+        boolean overflow = false;
+        for (int row = 0; row < shift; row++) {
+            overflow |= rows[row] != EMPTY_ROW;
+        }
+        System.arraycopy(rows, shift, rows, 0, ROW_COUNT - shift);
+        System.arraycopy(colors, shift * COL_COUNT, colors, 0, (ROW_COUNT - shift) * COL_COUNT);
+        for (int row = ROW_COUNT - shift; row < ROW_COUNT; row++) {
+            rows[row] = FULL_ROW & ~(1 << (hole + WALL_WIDTH));
+            Arrays.fill(colors, row * COL_COUNT, (row + 1) * COL_COUNT, (byte) GARBAGE);
+            colors[row * COL_COUNT + hole] = 0;
+        }
+        updateHeights();
+        return overflow;
+    }
+
+    private void updateHeights() {
+        for (int col = 0; col < COL_COUNT; col++) {
+            int row = 0;
+            while (row < ROW_COUNT && !isOccupied(col, row)) {
+                row++;
+            }
+            heights[col] = row;
+        }
+    }
+
+    public void save(final Snapshot snapshot) {
+        //Four bits per cell are enough for the color plane, and the rows and heights can
+        //all be worked out again from it.
+        for (final byte color : colors) {
+            snapshot.write(color, COLOR_BITS);
+        }
+    }
+
+    public void load(final Snapshot snapshot) throws IOException {
+        clear();
+        for (int row = 0; row < ROW_COUNT; row++) {
+            for (int col = 0; col < COL_COUNT; col++) {
+                final int color = snapshot.readInt(COLOR_BITS);
+                if (color > GARBAGE) {
+                    throw new IOException("Corrupt snapshot");
+                }
+                if (color != 0) {
+                    colors[row * COL_COUNT + col] = (byte) color;
+                    rows[row] |= 1 << (col + WALL_WIDTH);
+                }
+            }
+        }
+        updateHeights();
+    }
+
+    public int getClearedRow(final int index) {
+        return clearedRows[index];
+    }
+
+    public int getRowBits(final int y) {
+        //The occupied columns of the row, with column 0 in the lowest bit.
+        return (rows[y] & FIELD_MASK) >>> WALL_WIDTH;
+    }
+
+    public boolean isOccupied(final int x, final int y) {
+        return (rows[y] & (1 << (x + WALL_WIDTH))) != 0;
+    }
+
+    public void copyColors(final byte[] target) {
+        //Every cell's color, row by row, as getColor gives them.
+        System.arraycopy(colors, 0, target, 0, colors.length);
+    }
+
+    public int getColor(final int x, final int y) {
+        //0 for an empty cell, GARBAGE for garbage, otherwise the TileType's ordinal plus one.
+        return colors[y * COL_COUNT + x];
+    }
+}
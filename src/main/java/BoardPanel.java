@@ -1,16 +1,17 @@
 import javax.swing.*;
 import java.awt.*;
+import java.util.Arrays;
 
 
-public class BoardPanel extends JPanel {
+public class BoardPanel extends JPanel implements GameListener {
 
     public static final int COLOR_MIN = 35;
     public static final int COLOR_MAX = 255 - COLOR_MIN;
     private static final int BORDER_WIDTH = 5;
-    public static final int COL_COUNT = 10;
-    private static final int VISIBLE_ROW_COUNT = 20;
+    public static final int COL_COUNT = BitBoard.COL_COUNT;
+    public static final int ROW_COUNT = BitBoard.ROW_COUNT;
     private static final int HIDDEN_ROW_COUNT = 2;
-    public static final int ROW_COUNT = VISIBLE_ROW_COUNT + HIDDEN_ROW_COUNT;
+    private static final int VISIBLE_ROW_COUNT = ROW_COUNT - HIDDEN_ROW_COUNT;
     public static final int TILE_SIZE = 24;
     public static final int SHADE_WIDTH = 4;
     private static final int CENTER_X = COL_COUNT * TILE_SIZE / 2;
@@ -19,143 +20,220 @@ public class BoardPanel extends JPanel {
     public static final int PANEL_HEIGHT = VISIBLE_ROW_COUNT * TILE_SIZE + BORDER_WIDTH * 2;
     private static final Font LARGE_FONT = new Font("Tahoma", Font.BOLD, 16);
     private static final Font SMALL_FONT = new Font("Tahoma", Font.BOLD, 12);
-    private final Tetris tetris;
-    private final TileType[][] tiles;
-
-    public BoardPanel(final Tetris tetris) {
-        this.tetris = tetris;
-        this.tiles = new TileType[ROW_COUNT][COL_COUNT];
+    //The screen states refresh() tells apart. Switching between them repaints the whole board.
+    private static final int STATE_PLAYING = 0;
+    private static final int STATE_PAUSED = 1;
+    private static final int STATE_NEW_GAME = 2;
+    private static final int STATE_GAME_OVER = 3;
+    //Cell values for the visible cells: the board's color (see BitBoard.getColor),
+    //with GHOST set if the ghost covers the cell.
+    private static final int GHOST = 0x10;
+    //The performance overlay sits in the top left corner of the board, with a graph of
+    //the most recent frame times under its text.
+    private static final Font OVERLAY_FONT = new Font("Monospaced", Font.PLAIN, 10);
+    private static final Color OVERLAY_BACKGROUND = new Color(0, 0, 0, 192);
+    private static final int OVERLAY_INSET = 4;
+    private static final int OVERLAY_LINE_HEIGHT = 12;
+    private static final int OVERLAY_LINES = PerfStats.LINE_COUNT;
+    private static final int GRAPH_HEIGHT = 32;
+    private static final int OVERLAY_WIDTH = PerfStats.RECENT_FRAMES + 100;
+    private static final int OVERLAY_HEIGHT = OVERLAY_LINES * OVERLAY_LINE_HEIGHT + GRAPH_HEIGHT + OVERLAY_INSET * 3;
+    private final GameEngine engine;
+    //What the Swing painting works from. The engine itself is only read by refresh(),
+    //on the game loop's thread.
+    private final SharedFrame source;
+    private final GameFrame frame;
+    private final TileSprites sprites;
+    private final Rectangle clip;
+    private final StaticLayer gridLayer;
+    private final StaticLayer outlineLayer;
+    //The overlay's translucent background is kept in a layer of its own, since filling
+    //it directly would allocate on every frame.
+    private final StaticLayer overlayLayer;
+    private final TextGlyphs overlayGlyphs;
+    //The overlay's text, copied out of the stats whenever they publish new lines.
+    private final char[][] overlayText;
+    private final int[] overlayLengths;
+    private int overlayVersion;
+    private final long[] recentFrames;
+    private byte[] painted;
+    private byte[] current;
+    private int paintedState;
+    private PerfStats stats;
+    private boolean paintedOverlay;
+    //Set when the engine reports a change to the board, the piece or the game's state.
+    //Until then, refresh() doesn't have to look at the engine at all.
+    private boolean isChanged = true;
+
+    public BoardPanel(final GameEngine engine, final SharedFrame source) {
+        this.engine = engine;
+        this.source = source;
+        this.frame = new GameFrame();
+        this.sprites = TileSprites.forSize(TILE_SIZE, SHADE_WIDTH);
+        this.clip = new Rectangle();
+        this.painted = new byte[VISIBLE_ROW_COUNT * COL_COUNT];
+        this.current = new byte[VISIBLE_ROW_COUNT * COL_COUNT];
+        this.paintedState = -1;
+        this.recentFrames = new long[PerfStats.RECENT_FRAMES];
+        this.gridLayer = new StaticLayer(BoardPanel::paintGrid);
+        this.outlineLayer = new StaticLayer(BoardPanel::paintOutline);
+        this.overlayLayer = new StaticLayer(BoardPanel::paintOverlayLayer);
+        this.overlayGlyphs = new TextGlyphs(OVERLAY_FONT, Color.WHITE);
+        this.overlayText = new char[OVERLAY_LINES][PerfStats.MAX_LINE_LENGTH];
+        this.overlayLengths = new int[OVERLAY_LINES];
 
         setPreferredSize(new Dimension(PANEL_WIDTH, PANEL_HEIGHT));
         setBackground(Color.BLACK);
     }
 
-    public void clear() {
-        //Loop through every tile index and set its value
-        //to null to clear the board.
-        for (int i = 0; i < ROW_COUNT; i++) {
-            for (int j = 0; j < COL_COUNT; j++) {
-                tiles[i][j] = null;
-            }
-        }
+    public void setStats(final PerfStats stats) {
+        this.stats = stats;
     }
 
-    public boolean isValidAndEmpty(final TileType type, final int x, final int y, final int rotation) {
-
-        //Ensure the piece is in a valid column.
-        if (x < -type.getLeftInset(rotation) || x + type.getDimension() - type.getRightInset(rotation) >= COL_COUNT) {
-            return false;
+    public void refresh() {
+        //The overlay's graph moves every frame, so it's repainted every frame while it's
+        //shown. Hiding it repaints everything it was covering.
+        if (stats != null) {
+            final boolean overlay = stats.isVisible();
+            if (overlay) {
+                repaint(BORDER_WIDTH + OVERLAY_INSET, BORDER_WIDTH + OVERLAY_INSET, OVERLAY_WIDTH, OVERLAY_HEIGHT);
+            } else if (paintedOverlay) {
+                repaint();
+            }
+            paintedOverlay = overlay;
         }
 
-        //Ensure the piece is in a valid row.
-        if (y < -type.getTopInset(rotation) || y + type.getDimension() - type.getBottomInset(rotation) >= ROW_COUNT) {
-            return false;
+        if (!isChanged) {
+            return;
         }
-
-        //Loop through every tile in the piece and see if it conflicts with an existing tile.
-        for (int col = 0; col < type.getDimension(); col++) {
-            for (int row = 0; row < type.getDimension(); row++) {
-                if (type.isTile(col, row, rotation) && isOccupied(x + col, y + row)) {
-                    return false;
-                }
-            }
+        isChanged = false;
+
+        //Work out what every visible cell should show now, and compare it to what was
+        //shown after the last refresh. Only the area around the cells that changed is
+        //repainted, and nothing at all if the board looks the same.
+        final int state = engine.isPaused() ? STATE_PAUSED : engine.isNewGame() ? STATE_NEW_GAME
+                : engine.isGameOver() ? STATE_GAME_OVER : STATE_PLAYING;
+        if (state != paintedState) {
+            paintedState = state;
+            //Force every cell to count as changed the next time we're playing.
+            Arrays.fill(painted, (byte) -1);
+            repaint();
+            return;
         }
-        return true;
-    }
-
-    public void addPiece(final TileType type, final int x, final int y, final int rotation) {
-        //Loop through every tile within the piece and add it
-        //to the board only if the boolean that represents that
-        //tile is set to true.
-        for (int col = 0; col < type.getDimension(); col++) {
-            for (int row = 0; row < type.getDimension(); row++) {
-                if (type.isTile(col, row, rotation)) {
-                    setTile(col + x, row + y, type);
-                }
-            }
+        if (state != STATE_PLAYING) {
+            return;
         }
-    }
 
-    public int checkLines() {
-        int completedLines = 0;
-
-        //Here we loop through every line and check it to see if
-        //it's been cleared or not. If it has, we increment the
-        //number of completed lines and check the next row.
-        //The checkLine function handles clearing the line and
-        //shifting the rest of the board down for us.
-        for (int row = 0; row < ROW_COUNT; row++) {
-            if (checkLine(row)) {
-                completedLines++;
+        final BitBoard board = engine.getBoard();
+        for (int y = HIDDEN_ROW_COUNT; y < ROW_COUNT; y++) {
+            for (int x = 0; x < COL_COUNT; x++) {
+                current[(y - HIDDEN_ROW_COUNT) * COL_COUNT + x] = (byte) board.getColor(x, y);
             }
         }
-        return completedLines;
-    }
-
-    private boolean checkLine(final int line) {
-        //Iterate through every column in this row. If any of them are
-        //empty, then the row is not full.
-        for (int col = 0; col < COL_COUNT; col++) {
-            if (!isOccupied(col, line)) {
-                return false;
+        final TileType type = engine.getPieceType();
+        final int pieceCol = engine.getPieceCol();
+        final int pieceRow = engine.getPieceRow();
+        final int rotation = engine.getPieceRotation();
+        final int lowest = board.getDropRow(type, pieceCol, pieceRow, rotation);
+        for (int cell = 0; cell < type.getCellCount(rotation); cell++) {
+            final int col = pieceCol + type.getCellX(rotation, cell);
+            final int row = pieceRow + type.getCellY(rotation, cell) - HIDDEN_ROW_COUNT;
+            final int ghost = lowest + type.getCellY(rotation, cell) - HIDDEN_ROW_COUNT;
+            if (row >= 0) {
+                current[row * COL_COUNT + col] = (byte) (type.ordinal() + 1);
+            }
+            if (ghost >= 0) {
+                current[ghost * COL_COUNT + col] |= GHOST;
             }
         }
 
-        //Since the line is filled, we need to 'remove' it from the game.
-        //To do this, we simply shift every row above it down by one.
-        for (int row = line - 1; row >= 0; row--) {
-            for (int col = 0; col < COL_COUNT; col++) {
-                setTile(col, row + 1, getTile(col, row));
+        int minX = COL_COUNT;
+        int maxX = -1;
+        int minY = VISIBLE_ROW_COUNT;
+        int maxY = -1;
+        for (int y = 0; y < VISIBLE_ROW_COUNT; y++) {
+            for (int x = 0; x < COL_COUNT; x++) {
+                if (current[y * COL_COUNT + x] != painted[y * COL_COUNT + x]) {
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = Math.max(maxY, y);
+                }
             }
         }
-        return true;
-    }
-
-    private boolean isOccupied(final int x, final int y) {
-        return tiles[y][x] != null;
-    }
+        if (maxX >= 0) {
+            repaint(BORDER_WIDTH + minX * TILE_SIZE, BORDER_WIDTH + minY * TILE_SIZE,
+                    (maxX - minX + 1) * TILE_SIZE, (maxY - minY + 1) * TILE_SIZE);
+        }
 
-    private void setTile(final int x, final int y, final TileType type) {
-        tiles[y][x] = type;
+        final byte[] swap = painted;
+        painted = current;
+        current = swap;
     }
 
-    private TileType getTile(final int x, final int y) {
-        return tiles[y][x];
+    @Override
+    public void onEvents(final GameEngine engine, final GameEvents events) {
+        //Everything but the score and the level changes what the board shows.
+        for (int i = 0; i < events.size(); i++) {
+            final GameEvent event = events.getEvent(i);
+            if (event != GameEvent.SCORE_CHANGED && event != GameEvent.LEVEL_CHANGED) {
+                isChanged = true;
+                return;
+            }
+        }
     }
 
     @Override
     public void paintComponent(final Graphics g) {
-        super.paintComponent(g);
+        source.read(frame);
+        paintFrame(g, frame);
+    }
+
+    public void paintFrame(final Graphics g, final GameFrame frame) {
+        //Paints the game as the frame shows it. Called on the EDT with a frame of our
+        //own, or by the render thread with the one it paints every panel from.
+        final long start = System.nanoTime();
+        //Clear to the background ourselves. JComponent's paintComponent paints through
+        //a copy of the Graphics, which would be a new object on every frame.
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
 
         //This helps simplify the positioning of things.
         g.translate(BORDER_WIDTH, BORDER_WIDTH);
 
         //Draw the board differently depending on the current game state.
-        if (tetris.isPaused()) {
+        if (frame.isPaused()) {
             g.setFont(LARGE_FONT);
             g.setColor(Color.WHITE);
             final String msg = "SZÜNET";
             g.drawString(msg, CENTER_X - g.getFontMetrics().stringWidth(msg) / 2, CENTER_Y);
-        } else if (tetris.isNewGame() || tetris.isGameOver()) {
+        } else if (frame.isNewGame() || frame.isGameOver()) {
             g.setFont(LARGE_FONT);
             g.setColor(Color.WHITE);
 
             //Because both the game over and new game screens are nearly identical,
             //we can handle them together and just use a ternary operator to change
             //the messages that are displayed.
-            String msg = tetris.isNewGame() ? "TETRIS" : "JÁTÉK VÉGE";
+            String msg = frame.isNewGame() ? "TETRIS" : "JÁTÉK VÉGE";
             g.drawString(msg, CENTER_X - g.getFontMetrics().stringWidth(msg) / 2, 150);
             g.setFont(SMALL_FONT);
-            msg = tetris.isNewGame() ? "Kezdéshes nyomja: Enter" : "Ismétlés: Enter";
+            msg = frame.isNewGame() ? "Kezdéshes nyomja: Enter" : "Ismétlés: Enter";
             g.drawString(msg, CENTER_X - g.getFontMetrics().stringWidth(msg) / 2, 300);
         } else {
 
-            //Draw the tiles onto the board.
-            for (int x = 0; x < COL_COUNT; x++) {
-                for (int y = HIDDEN_ROW_COUNT; y < ROW_COUNT; y++) {
-                    final TileType tile = getTile(x, y);
-                    if (tile != null) {
-                        drawTile(tile, x * TILE_SIZE, (y - HIDDEN_ROW_COUNT) * TILE_SIZE, g);
+            //Draw the tiles onto the board. Only the cells inside the area being repainted
+            //are drawn, which is usually just the few cells around the piece.
+            clip.setBounds(0, 0, COL_COUNT * TILE_SIZE, VISIBLE_ROW_COUNT * TILE_SIZE);
+            g.getClipBounds(clip);
+            final int fromX = Math.max(0, clip.x / TILE_SIZE);
+            final int toX = Math.min(COL_COUNT, (clip.x + clip.width + TILE_SIZE - 1) / TILE_SIZE);
+            final int fromY = Math.max(HIDDEN_ROW_COUNT, clip.y / TILE_SIZE + HIDDEN_ROW_COUNT);
+            final int toY = Math.min(ROW_COUNT, (clip.y + clip.height + TILE_SIZE - 1) / TILE_SIZE + HIDDEN_ROW_COUNT);
+            for (int x = fromX; x < toX; x++) {
+                for (int y = fromY; y < toY; y++) {
+                    final int color = frame.getColor(x, y);
+                    if (color != 0) {
+                        sprites.drawColor(g, color, x * TILE_SIZE, (y - HIDDEN_ROW_COUNT) * TILE_SIZE);
                     }
                 }
             }
@@ -164,92 +242,95 @@ public class BoardPanel extends JPanel {
             //pieces because it's still not part of the game board. If it were
             //part of the board, it would need to be removed every frame which
             //would just be slow and confusing.
-            final TileType type = tetris.getPieceType();
-            final int pieceCol = tetris.getPieceCol();
-            final int pieceRow = tetris.getPieceRow();
-            final int rotation = tetris.getPieceRotation();
+            final TileType type = frame.getPieceType();
+            final int pieceCol = frame.getPieceCol();
+            final int pieceRow = frame.getPieceRow();
+            final int rotation = frame.getPieceRotation();
 
             //Draw the piece onto the board.
-            for (int col = 0; col < type.getDimension(); col++) {
-                for (int row = 0; row < type.getDimension(); row++) {
-                    if (pieceRow + row >= 2 && type.isTile(col, row, rotation)) {
-                        drawTile(type, (pieceCol + col) * TILE_SIZE, (pieceRow + row - HIDDEN_ROW_COUNT) * TILE_SIZE,
-                                g);
-                    }
+            for (int cell = 0; cell < type.getCellCount(rotation); cell++) {
+                final int col = type.getCellX(rotation, cell);
+                final int row = type.getCellY(rotation, cell);
+                if (pieceRow + row >= HIDDEN_ROW_COUNT) {
+                    sprites.draw(g, type, (pieceCol + col) * TILE_SIZE,
+                            (pieceRow + row - HIDDEN_ROW_COUNT) * TILE_SIZE);
                 }
             }
 
-            //Draw the ghost (semi-transparent piece that shows where the current piece will land). I couldn't think of
-            //a better way to implement this, so it'll have to do for now. We simply take the current position and move
-            //down until we hit a row that would cause a collision.
-            Color base = type.getBaseColor();
-            int alpha = 20;
-            if (type == TileType.TypeJ || type == TileType.TypeT) {
-                alpha = 40;
-            }
-            base = new Color(base.getRed(), base.getGreen(), base.getBlue(), alpha);
-
-            for (int lowest = pieceRow; lowest < ROW_COUNT; lowest++) {
-                //If no collision is detected, try the next row.
-                if (isValidAndEmpty(type, pieceCol, lowest, rotation)) {
-                    continue;
-                }
-
-                //Draw the ghost one row higher than the one the collision took place at.
-                lowest--;
-
-                //Draw the ghost piece.
-                for (int col = 0; col < type.getDimension(); col++) {
-                    for (int row = 0; row < type.getDimension(); row++) {
-                        if (lowest + row >= 2 && type.isTile(col, row, rotation)) {
-                            drawTile(base, base.brighter(), base.darker(), (pieceCol + col) * TILE_SIZE,
-                                    (lowest + row - HIDDEN_ROW_COUNT) * TILE_SIZE, g);
-                        }
-                    }
+            //Draw the ghost (semi-transparent piece that shows where the current piece will land).
+            final int lowest = frame.getDropRow();
+            for (int cell = 0; cell < type.getCellCount(rotation); cell++) {
+                final int col = type.getCellX(rotation, cell);
+                final int row = type.getCellY(rotation, cell);
+                if (lowest + row >= HIDDEN_ROW_COUNT) {
+                    sprites.drawGhost(g, type, (pieceCol + col) * TILE_SIZE,
+                            (lowest + row - HIDDEN_ROW_COUNT) * TILE_SIZE);
                 }
-
-                break;
             }
 
             //Draw the background grid above the pieces (serves as a useful visual
             //for players, and makes the pieces look nicer by breaking them up).
-            g.setColor(Color.DARK_GRAY);
-            for (int x = 0; x < COL_COUNT; x++) {
-                for (int y = 0; y < VISIBLE_ROW_COUNT; y++) {
-                    g.drawLine(0, y * TILE_SIZE, COL_COUNT * TILE_SIZE, y * TILE_SIZE);
-                    g.drawLine(x * TILE_SIZE, 0, x * TILE_SIZE, VISIBLE_ROW_COUNT * TILE_SIZE);
-                }
-            }
+            gridLayer.draw(g, this, COL_COUNT * TILE_SIZE + 1, VISIBLE_ROW_COUNT * TILE_SIZE + 1);
         }
 
         //Draw the outline.
-        g.setColor(Color.WHITE);
-        g.drawRect(0, 0, TILE_SIZE * COL_COUNT, TILE_SIZE * VISIBLE_ROW_COUNT);
-    }
+        outlineLayer.draw(g, this, COL_COUNT * TILE_SIZE + 1, VISIBLE_ROW_COUNT * TILE_SIZE + 1);
 
-    private void drawTile(final TileType type, final int x, final int y, final Graphics g) {
-        drawTile(type.getBaseColor(), type.getLightColor(), type.getDarkColor(), x, y, g);
+        //The overlay isn't counted in the paint time it shows.
+        if (stats != null) {
+            stats.recordBoardPaint(System.nanoTime() - start);
+            if (stats.isVisible()) {
+                paintOverlay(g);
+            }
+        }
     }
 
-    private void drawTile(
-            final Color base, final Color light, final Color dark, final int x, final int y, final Graphics g) {
+    private void paintOverlay(final Graphics g) {
+        //The background never changes, and the text is drawn from cached glyphs, so
+        //even the overlay allocates nothing.
+        overlayLayer.draw(g, this, OVERLAY_INSET + OVERLAY_WIDTH, OVERLAY_INSET + OVERLAY_HEIGHT);
+        if (stats.getVersion() != overlayVersion) {
+            overlayVersion = stats.getVersion();
+            for (int i = 0; i < OVERLAY_LINES; i++) {
+                overlayLengths[i] = stats.copyLine(i, overlayText[i]);
+            }
+        }
+        for (int i = 0; i < OVERLAY_LINES; i++) {
+            overlayGlyphs.draw(g, overlayText[i], overlayLengths[i], OVERLAY_INSET * 2,
+                    OVERLAY_INSET + (i + 1) * OVERLAY_LINE_HEIGHT);
+        }
 
-        //Fill the entire tile with the base color.
-        g.setColor(base);
-        g.fillRect(x, y, TILE_SIZE, TILE_SIZE);
+        //One bar per frame, scaled so the target frame time is half of the graph's
+        //height. Anything over twice the target is cut off at the top.
+        final int left = OVERLAY_INSET * 2;
+        final int bottom = OVERLAY_INSET * 2 + OVERLAY_LINES * OVERLAY_LINE_HEIGHT + GRAPH_HEIGHT;
+        final int count = stats.copyRecentFrames(recentFrames);
+        g.setColor(Color.GREEN);
+        for (int i = 0; i < count; i++) {
+            final long height = Math.min(GRAPH_HEIGHT, recentFrames[i] * GRAPH_HEIGHT / (GameEngine.FRAME_NANOS * 2));
+            g.drawLine(left + i, bottom, left + i, bottom - (int) height);
+        }
+        g.setColor(Color.RED);
+        g.drawLine(left, bottom - GRAPH_HEIGHT / 2, left + count, bottom - GRAPH_HEIGHT / 2);
+    }
 
-        //Fill the bottom and right edges of the tile with the dark shading color.
-        g.setColor(dark);
-        g.fillRect(x, y + TILE_SIZE - SHADE_WIDTH, TILE_SIZE, SHADE_WIDTH);
-        g.fillRect(x + TILE_SIZE - SHADE_WIDTH, y, SHADE_WIDTH, TILE_SIZE);
+    private static void paintOverlayLayer(final Graphics2D g, final int width, final int height) {
+        g.setColor(OVERLAY_BACKGROUND);
+        g.fillRect(OVERLAY_INSET, OVERLAY_INSET, OVERLAY_WIDTH, OVERLAY_HEIGHT);
+    }
 
-        //Fill the top and left edges with the light shading. We draw a single line
-        //for each row or column rather than a rectangle so that we can draw a nice
-        //looking diagonal where the light and dark shading meet.
-        g.setColor(light);
-        for (int i = 0; i < SHADE_WIDTH; i++) {
-            g.drawLine(x, y + i, x + TILE_SIZE - i - 1, y + i);
-            g.drawLine(x + i, y, x + i, y + TILE_SIZE - i - 1);
+    private static void paintGrid(final Graphics2D g, final int width, final int height) {
+        g.setColor(Color.DARK_GRAY);
+        for (int x = 0; x < COL_COUNT; x++) {
+            g.drawLine(x * TILE_SIZE, 0, x * TILE_SIZE, VISIBLE_ROW_COUNT * TILE_SIZE);
         }
+        for (int y = 0; y < VISIBLE_ROW_COUNT; y++) {
+            g.drawLine(0, y * TILE_SIZE, COL_COUNT * TILE_SIZE, y * TILE_SIZE);
+        }
+    }
+
+    private static void paintOutline(final Graphics2D g, final int width, final int height) {
+        g.setColor(Color.WHITE);
+        g.drawRect(0, 0, TILE_SIZE * COL_COUNT, TILE_SIZE * VISIBLE_ROW_COUNT);
     }
 }
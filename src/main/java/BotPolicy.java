@@ -0,0 +1,6 @@
+public interface BotPolicy {
+
+    //Called once per frame, before the engine is stepped. Returns the input to apply
+    //during this frame, or null to let the frame pass without one.
+    Input nextInput(GameEngine engine);
+}
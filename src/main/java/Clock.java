@@ -1,36 +1,49 @@
+import java.io.IOException;
+import java.util.function.LongSupplier;
+
+
 public class Clock {
 
-    private float millisPerCycle;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private final LongSupplier timeSource;
+    private long nanosPerCycle;
     private long lastUpdate;
     private int elapsedCycles;
-    private float excessCycles;
+    private long excessNanos;
     private boolean isPaused;
 
     public Clock(final float cyclesPerSecond) {
+        this(cyclesPerSecond, System::nanoTime);
+    }
+
+    public Clock(final float cyclesPerSecond, final LongSupplier timeSource) {
+        this.timeSource = timeSource;
         setCyclesPerSecond(cyclesPerSecond);
         reset();
     }
 
     public void setCyclesPerSecond(final float cyclesPerSecond) {
-        this.millisPerCycle = (1.0f / cyclesPerSecond) * 1000;
+        //The cycle length is rounded to whole nanoseconds once, and everything from here
+        //on is integer arithmetic, so no time is lost or gained between updates.
+        this.nanosPerCycle = Math.max(1L, Math.round(NANOS_PER_SECOND / (double) cyclesPerSecond));
     }
 
     public void reset() {
         this.elapsedCycles = 0;
-        this.excessCycles = 0.0f;
-        this.lastUpdate = getCurrentTime();
+        this.excessNanos = 0L;
+        this.lastUpdate = timeSource.getAsLong();
         this.isPaused = false;
     }
 
     public void update() {
         //Get the current time and calculate the delta time.
-        final long currUpdate = getCurrentTime();
-        final float delta = (float) (currUpdate - lastUpdate) + excessCycles;
+        final long currUpdate = timeSource.getAsLong();
+        final long delta = (currUpdate - lastUpdate) + excessNanos;
 
         //Update the number of elapsed and excess ticks if we're not paused.
         if (!isPaused) {
-            this.elapsedCycles += (int) Math.floor(delta / millisPerCycle);
-            this.excessCycles = delta % millisPerCycle;
+            this.elapsedCycles += (int) (delta / nanosPerCycle);
+            this.excessNanos = delta % nanosPerCycle;
         }
 
         //Set the last update time for the next update cycle.
@@ -41,6 +54,24 @@ public class Clock {
         this.isPaused = paused;
     }
 
+    public void save(final Snapshot snapshot) {
+        //The time of the last update is saved as is. This only makes sense for a clock
+        //that runs on a time source which is saved and restored along with it.
+        snapshot.write(nanosPerCycle, 40);
+        snapshot.write(lastUpdate, 64);
+        snapshot.write(elapsedCycles, 32);
+        snapshot.write(excessNanos, 40);
+        snapshot.writeBoolean(isPaused);
+    }
+
+    public void load(final Snapshot snapshot) throws IOException {
+        this.nanosPerCycle = Math.max(1L, snapshot.read(40));
+        this.lastUpdate = snapshot.read(64);
+        this.elapsedCycles = snapshot.readInt(32);
+        this.excessNanos = snapshot.read(40);
+        this.isPaused = snapshot.readBoolean();
+    }
+
     public boolean hasElapsedCycle() {
         if (elapsedCycles > 0) {
             this.elapsedCycles--;
@@ -48,8 +79,4 @@ public class Clock {
         }
         return false;
     }
-
-    private static long getCurrentTime() {
-        return (System.nanoTime() / 1000000L);
-    }
 }
@@ -0,0 +1,58 @@
+import java.util.concurrent.locks.LockSupport;
+
+
+public class FrameScheduler {
+
+    //parkNanos can wake up late by a good fraction of a millisecond, so we only park
+    //until this long before a deadline and spin for the rest of the way.
+    private static final long SPIN_NANOS = 1000000L;
+    private final long periodNanos;
+    private final int maxCatchUp;
+    private long deadline;
+    //How late the last frame started compared to its deadline, in nanoseconds, and
+    //how many frames have been dropped after stalls so far.
+    private long lastLateness;
+    private long droppedFrames;
+
+    public FrameScheduler(final long periodNanos, final int maxCatchUp) {
+        this.periodNanos = periodNanos;
+        this.maxCatchUp = maxCatchUp;
+        this.deadline = System.nanoTime();
+    }
+
+    public int awaitFrame() {
+        //Deadlines are a fixed period apart, measured from the first one rather than
+        //from whenever the last frame happened to finish, so lateness doesn't add up.
+        deadline += periodNanos;
+        long now = System.nanoTime();
+        while (deadline - now > SPIN_NANOS) {
+            LockSupport.parkNanos(deadline - now - SPIN_NANOS);
+            now = System.nanoTime();
+        }
+        while (deadline - now > 0) {
+            Thread.yield();
+            now = System.nanoTime();
+        }
+        lastLateness = now - deadline;
+
+        //If we're more than a frame late (the game was stalled by a GC pause, or the
+        //window being dragged), run the missed frames now to catch up. After a long
+        //stall the backlog is dropped instead, so the game doesn't fast forward.
+        final long due = (now - deadline) / periodNanos + 1;
+        if (due > maxCatchUp) {
+            droppedFrames += due - maxCatchUp;
+            this.deadline = now;
+            return maxCatchUp;
+        }
+        deadline += (due - 1) * periodNanos;
+        return (int) due;
+    }
+
+    public long getLastLateness() {
+        return lastLateness;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+}
@@ -0,0 +1,522 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+
+public class GameEngine {
+
+    public static final long FRAME_TIME = 1000L / 50L;
+    public static final long FRAME_NANOS = FRAME_TIME * 1000000L;
+    private static final TileType[] TYPES = TileType.values();
+    private static final Randomizer[] RANDOMIZERS = Randomizer.values();
+    //How many of the upcoming pieces can be shown at most. The first is the next piece.
+    public static final int MAX_PREVIEW = 6;
+    public static final int DEFAULT_PREVIEW = MAX_PREVIEW;
+    //Added to piece positions when they're saved, to keep the saved values positive.
+    private static final int PIECE_OFFSET = 4;
+    private final BitBoard board;
+    private final Rng random;
+    //The randomizer deals the pieces into the queue, which always holds previewCount of
+    //them once a game has started.
+    private Randomizer randomizer;
+    private PieceGenerator generator;
+    private int previewCount;
+    private final PieceQueue upcoming;
+    private final Clock logicTimer;
+    private long time;
+    private long tick;
+    private boolean isPaused;
+    private boolean isNewGame;
+    private boolean isGameOver;
+    private int level;
+    private int score;
+    private int lines;
+    private int pieces;
+    private TileType currentType;
+    private int currentCol;
+    private int currentRow;
+    private int currentRotation;
+    private int dropCooldown;
+    private float gameSpeed;
+    //Everything that happens during a step is collected here, and handed to the
+    //listeners in one batch at the end of the step.
+    private final GameEvents events;
+    private GameListener[] listeners;
+
+    public GameEngine(final long seed) {
+        this(seed, Randomizer.BAG, DEFAULT_PREVIEW);
+    }
+
+    public GameEngine(final long seed, final Randomizer randomizer, final int previewCount) {
+        if (previewCount < 1 || previewCount > MAX_PREVIEW) {
+            throw new IllegalArgumentException("Preview must be 1 to " + MAX_PREVIEW + ": " + previewCount);
+        }
+        this.board = new BitBoard();
+        this.random = new Rng(seed);
+        this.randomizer = randomizer;
+        this.generator = randomizer.create(random);
+        this.previewCount = previewCount;
+        this.upcoming = new PieceQueue(Integer.highestOneBit(MAX_PREVIEW) << 1);
+        this.isNewGame = true;
+        this.gameSpeed = 1.0f;
+        this.events = new GameEvents();
+        this.listeners = new GameListener[0];
+
+        //The logic timer runs on the engine's own time, which advances by exactly one
+        //frame per step, so the engine can be stepped as fast as the caller likes. It
+        //starts paused to keep the game from running before the player starts it.
+        this.logicTimer = new Clock(gameSpeed, () -> time);
+        logicTimer.setPaused(true);
+    }
+
+    public void addListener(final GameListener listener) {
+        //Listeners are only added while setting up, so each one makes a new array, and
+        //every step just walks the current one.
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+
+    private void raise(final GameEvent event, final int a, final int b, final int c, final int d) {
+        events.add(event, a, b, c, d);
+    }
+
+    private void raiseMoved() {
+        raise(GameEvent.PIECE_MOVED, currentCol, currentRow, currentRotation, 0);
+    }
+
+    public void handleInput(final Input input) {
+        switch (input) {
+
+            //Drop - When pressed, we check to see that the game is not
+            //paused and that there is no drop cooldown, then set the
+            //logic timer to run at a speed of 25 cycles per second.
+            case DROP:
+                if (!isPaused && dropCooldown == 0) {
+                    logicTimer.setCyclesPerSecond(25.0f);
+                }
+                break;
+
+            //Drop - When released, we set the speed of the logic timer
+            //back to whatever the current game speed is and clear out
+            //any cycles that might still be elapsed.
+            case DROP_RELEASE:
+                logicTimer.setCyclesPerSecond(gameSpeed);
+                if (isPlaying()) {
+                    logicTimer.reset();
+                }
+                break;
+
+            //Hard Drop - When pressed, we check to see that the game is being played
+            //and that there is no drop cooldown, then move the piece straight to the
+            //row it would land on and lock it there right away. The cooldown blocks hard
+            //drops on purpose: a held key repeats, and would otherwise slam every new
+            //piece down the moment it spawns. Recorded replays also rely on a hard drop
+            //during the cooldown being ignored.
+            case HARD_DROP:
+                if (isPlaying() && dropCooldown == 0) {
+                    currentRow = board.getDropRow(currentType, currentCol, currentRow, currentRotation);
+                    lockPiece();
+                }
+                break;
+
+            //Move Left - When pressed, we check to see that the game is
+            //not paused and that the position to the left of the current
+            //position is valid. If so, we decrement the current column by 1.
+            case MOVE_LEFT:
+                if (isPlaying() && board.isValidAndEmpty(currentType, currentCol - 1, currentRow, currentRotation)) {
+                    currentCol--;
+                    raiseMoved();
+                }
+                break;
+
+            //Move Right - When pressed, we check to see that the game is
+            //not paused and that the position to the right of the current
+            //position is valid. If so, we increment the current column by 1.
+            case MOVE_RIGHT:
+                if (isPlaying() && board.isValidAndEmpty(currentType, currentCol + 1, currentRow, currentRotation)) {
+                    currentCol++;
+                    raiseMoved();
+                }
+                break;
+
+            //Rotate Anticlockwise - When pressed, check to see that the game is not paused
+            //and then attempt to rotate the piece anticlockwise.
+            case ROTATE_ANTICLOCKWISE:
+                if (isPlaying()) {
+                    rotatePiece((currentRotation == 0) ? 3 : currentRotation - 1);
+                }
+                break;
+
+            //Rotate Clockwise - When pressed, check to see that the game is not paused
+            //and then attempt to rotate the piece clockwise.
+            case ROTATE_CLOCKWISE:
+                if (isPlaying()) {
+                    rotatePiece((currentRotation == 3) ? 0 : currentRotation + 1);
+                }
+                break;
+
+            //Pause Game - When pressed, check to see that we're currently playing a game.
+            //If so, toggle the pause variable and update the logic timer to reflect this
+            //change, otherwise the game will execute a huge number of updates and essentially
+            //cause an instant game over when we unpause if we stay paused for more than a
+            //minute or so.
+            case PAUSE:
+                if (!isGameOver && !isNewGame) {
+                    isPaused = !isPaused;
+                    logicTimer.setPaused(isPaused);
+                    raise(GameEvent.PAUSE_TOGGLED, isPaused ? 1 : 0, 0, 0, 0);
+                }
+                break;
+
+            //Start Game - When pressed, check to see that we're in either a game over or new
+            //game state. If so, reset the game.
+            case START:
+                if (canStart()) {
+                    resetGame();
+                }
+                break;
+        }
+    }
+
+    public void step(final Input input) {
+        if (input != null) {
+            handleInput(input);
+        }
+        step();
+    }
+
+    public void step() {
+        //Advance the engine's time by one frame and run the game logic if the logic
+        //timer says a cycle has elapsed.
+        time += FRAME_NANOS;
+        tick++;
+        logicTimer.update();
+        if (logicTimer.hasElapsedCycle()) {
+            updateGame();
+        }
+        if (dropCooldown > 0) {
+            dropCooldown--;
+        }
+
+        //Hand everything that happened in this step, including the inputs handled
+        //before it, to the listeners in one go.
+        if (!events.isEmpty()) {
+            for (final GameListener listener : listeners) {
+                listener.onEvents(this, events);
+            }
+            events.clear();
+        }
+    }
+
+    private void updateGame() {
+        //Check to see if the piece's position can move down to the next row.
+        if (board.isValidAndEmpty(currentType, currentCol, currentRow + 1, currentRotation)) {
+            //Increment the current row if it's safe to do so.
+            currentRow++;
+            raiseMoved();
+        } else {
+            //We've either reached the bottom of the board, or landed on another piece, so
+            //we need to add the piece to the board.
+            lockPiece();
+        }
+    }
+
+    private void lockPiece() {
+        board.addPiece(currentType, currentCol, currentRow, currentRotation);
+        raise(GameEvent.PIECE_LOCKED, currentType.ordinal(), currentCol, currentRow, currentRotation);
+
+        //Check to see if adding the new piece resulted in any cleared lines. If so,
+        //increase the player's score. (Up to 4 lines can be cleared in a single go;
+        //[1 = 100pts, 2 = 200pts, 3 = 400pts, 4 = 800pts]).
+        final int cleared = board.checkLines();
+        if (cleared > 0) {
+            int rows = 0;
+            for (int i = 0; i < cleared; i++) {
+                rows |= 1 << board.getClearedRow(i);
+            }
+            score += 50 << cleared;
+            lines += cleared;
+            raise(GameEvent.LINES_CLEARED, cleared, rows, 0, 0);
+            raise(GameEvent.SCORE_CHANGED, score, lines, 0, 0);
+        }
+        pieces++;
+
+        //Increase the speed slightly for the next piece and update the game's timer
+        //to reflect the increase.
+        gameSpeed += 0.035f;
+        logicTimer.setCyclesPerSecond(gameSpeed);
+        logicTimer.reset();
+
+        //Set the drop cooldown so the next piece doesn't automatically come flying
+        //in from the heavens immediately after this piece hits if we've not reacted
+        //yet. (~0.5 second buffer). It holds off both soft and hard drops.
+        dropCooldown = 25;
+
+        //Update the difficulty level. This has no effect on the game, and is only
+        //used in the "Level" string in the SidePanel.
+        final int oldLevel = level;
+        level = (int) (gameSpeed * 1.70f);
+        if (level != oldLevel) {
+            raise(GameEvent.LEVEL_CHANGED, level, 0, 0, 0);
+        }
+
+        //Spawn a new piece to control.
+        spawnPiece();
+    }
+
+    private void resetGame() {
+        raise(GameEvent.GAME_STARTED, 0, 0, 0, 0);
+        if (score != 0 || lines != 0) {
+            raise(GameEvent.SCORE_CHANGED, 0, 0, 0, 0);
+        }
+        if (level != 1) {
+            raise(GameEvent.LEVEL_CHANGED, 1, 0, 0, 0);
+        }
+        this.level = 1;
+        this.score = 0;
+        this.lines = 0;
+        this.pieces = 0;
+        this.gameSpeed = 1.0f;
+        this.isNewGame = false;
+        this.isGameOver = false;
+        //The last piece of the previous game always leaves a cooldown behind. It's
+        //cleared so that a game plays the same as on a new engine, which is what its
+        //replay is played back on.
+        this.dropCooldown = 0;
+        board.clear();
+        generator.reset();
+        upcoming.clear();
+        fillQueue();
+        logicTimer.reset();
+        logicTimer.setCyclesPerSecond(gameSpeed);
+        spawnPiece();
+    }
+
+    private void spawnPiece() {
+        //Poll the next piece and reset our position and rotation to
+        //their default variables, then deal another piece into the queue.
+        this.currentType = TYPES[upcoming.poll()];
+        this.currentCol = currentType.getSpawnColumn();
+        this.currentRow = currentType.getSpawnRow();
+        this.currentRotation = 0;
+        fillQueue();
+        raise(GameEvent.PIECE_SPAWNED, currentType.ordinal(), currentCol, currentRow, 0);
+
+        //If the spawn point is invalid, we need to pause the game and flag that we've lost
+        //because it means that the pieces on the board have gotten too high.
+        if (!board.isValidAndEmpty(currentType, currentCol, currentRow, currentRotation)) {
+            this.isGameOver = true;
+            logicTimer.setPaused(true);
+            raise(GameEvent.GAME_OVER, score, 0, 0, 0);
+        }
+    }
+
+    private void fillQueue() {
+        while (upcoming.size() < previewCount) {
+            upcoming.offer(generator.next());
+        }
+    }
+
+    private void rotatePiece(final int newRotation) {
+        //Use the first of the piece's wall kicks that gives a valid position, if any.
+        final int kick = board.findKick(currentType, currentCol, currentRow, currentRotation, newRotation);
+        if (kick >= 0) {
+            currentCol += currentType.getKickX(currentRotation, newRotation, kick);
+            currentRow += currentType.getKickY(currentRotation, newRotation, kick);
+            currentRotation = newRotation;
+            raise(GameEvent.PIECE_ROTATED, currentRotation, kick, 0, 0);
+            raiseMoved();
+        }
+    }
+
+    public void addGarbage(final int count, final int hole) {
+        //Garbage from the opponent in the versus mode. It only lands while a game is
+        //being played, and pushes the piece up along with the board if it would
+        //otherwise end up inside of the garbage.
+        if (!isPlaying() || count <= 0) {
+            return;
+        }
+        boolean isLost = board.addGarbageRows(count, hole);
+        raise(GameEvent.GARBAGE_ADDED, count, hole, 0, 0);
+        final int row = currentRow;
+        while (!isLost && !board.isValidAndEmpty(currentType, currentCol, currentRow, currentRotation)) {
+            currentRow--;
+            isLost = currentRow < -currentType.getDimension();
+        }
+        if (currentRow != row) {
+            raiseMoved();
+        }
+        if (isLost) {
+            this.isGameOver = true;
+            logicTimer.setPaused(true);
+            raise(GameEvent.GAME_OVER, score, 0, 0, 0);
+        }
+    }
+
+    public void save(final Snapshot snapshot) {
+        //Everything the game needs to carry on exactly where it was. The columns and rows
+        //are offset by the piece's largest possible dimension, since a piece with empty
+        //edges can sit partly outside of the board.
+        board.save(snapshot);
+        snapshot.write(random.getState(), Rng.STATE_BITS);
+        logicTimer.save(snapshot);
+        snapshot.write(time, 64);
+        snapshot.write(tick, 64);
+        snapshot.writeBoolean(isPaused);
+        snapshot.writeBoolean(isNewGame);
+        snapshot.writeBoolean(isGameOver);
+        snapshot.write(level, 32);
+        snapshot.write(score, 32);
+        snapshot.write(lines, 32);
+        snapshot.write(pieces, 32);
+        snapshot.write(currentType == null ? 0 : currentType.ordinal() + 1, 3);
+        snapshot.write(randomizer.ordinal(), 2);
+        snapshot.write(previewCount, 3);
+        generator.save(snapshot);
+        snapshot.write(upcoming.size(), 3);
+        for (int i = 0; i < upcoming.size(); i++) {
+            snapshot.write(upcoming.peek(i), 3);
+        }
+        snapshot.write(currentCol + PIECE_OFFSET, 6);
+        snapshot.write(currentRow + PIECE_OFFSET, 6);
+        snapshot.write(currentRotation, 2);
+        snapshot.write(dropCooldown, 8);
+        snapshot.write(Float.floatToIntBits(gameSpeed), 32);
+    }
+
+    public void load(final Snapshot snapshot) throws IOException {
+        board.load(snapshot);
+        random.setState(snapshot.read(Rng.STATE_BITS));
+        logicTimer.load(snapshot);
+        this.time = snapshot.read(64);
+        this.tick = snapshot.read(64);
+        this.isPaused = snapshot.readBoolean();
+        this.isNewGame = snapshot.readBoolean();
+        this.isGameOver = snapshot.readBoolean();
+        this.level = snapshot.readInt(32);
+        this.score = snapshot.readInt(32);
+        this.lines = snapshot.readInt(32);
+        this.pieces = snapshot.readInt(32);
+        this.currentType = readType(snapshot);
+        final int randomizerIndex = snapshot.readInt(2);
+        this.previewCount = snapshot.readInt(3);
+        if (randomizerIndex >= RANDOMIZERS.length || previewCount < 1 || previewCount > MAX_PREVIEW) {
+            throw new IOException("Corrupt snapshot");
+        }
+        if (RANDOMIZERS[randomizerIndex] != randomizer) {
+            this.randomizer = RANDOMIZERS[randomizerIndex];
+            this.generator = randomizer.create(random);
+        }
+        generator.load(snapshot);
+        upcoming.clear();
+        final int queued = snapshot.readInt(3);
+        for (int i = 0; i < queued; i++) {
+            final int type = snapshot.readInt(3);
+            if (type >= TYPES.length || i >= previewCount) {
+                throw new IOException("Corrupt snapshot");
+            }
+            upcoming.offer(type);
+        }
+        this.currentCol = snapshot.readInt(6) - PIECE_OFFSET;
+        this.currentRow = snapshot.readInt(6) - PIECE_OFFSET;
+        this.currentRotation = snapshot.readInt(2);
+        this.dropCooldown = snapshot.readInt(8);
+        this.gameSpeed = Float.intBitsToFloat(snapshot.readInt(32));
+        if (!isNewGame && (currentType == null || upcoming.size() != previewCount)) {
+            throw new IOException("Corrupt snapshot");
+        }
+    }
+
+    private static TileType readType(final Snapshot snapshot) throws IOException {
+        final int type = snapshot.readInt(3);
+        if (type > TYPES.length) {
+            throw new IOException("Corrupt snapshot");
+        }
+        return type == 0 ? null : TYPES[type - 1];
+    }
+
+    private boolean isPlaying() {
+        return !isPaused && !isNewGame && !isGameOver;
+    }
+
+    public boolean canStart() {
+        //Whether a START input would start a new game right now.
+        return isGameOver || isNewGame;
+    }
+
+    public long getStartSeed() {
+        //The seed of a new engine that deals the same pieces as a game started right
+        //now, so a replay of just that game can be played back from the seed.
+        return random.getSeed();
+    }
+
+    public BitBoard getBoard() {
+        return board;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public boolean isPaused() {
+        return isPaused;
+    }
+
+    public boolean isGameOver() {
+        return isGameOver;
+    }
+
+    public boolean isNewGame() {
+        return isNewGame;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getLines() {
+        return lines;
+    }
+
+    public int getPieces() {
+        return pieces;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public TileType getPieceType() {
+        return currentType;
+    }
+
+    public TileType getNextPieceType() {
+        return getPreviewType(0);
+    }
+
+    public TileType getPreviewType(final int index) {
+        //The piece index places into the queue of upcoming pieces, or null if the queue
+        //isn't that long (or the first game hasn't started yet).
+        final int type = upcoming.peek(index);
+        return type < 0 ? null : TYPES[type];
+    }
+
+    public int getPreviewCount() {
+        return previewCount;
+    }
+
+    public Randomizer getRandomizer() {
+        return randomizer;
+    }
+
+    public int getPieceCol() {
+        return currentCol;
+    }
+
+    public int getPieceRow() {
+        return currentRow;
+    }
+
+    public int getPieceRotation() {
+        return currentRotation;
+    }
+}
@@ -0,0 +1,30 @@
+public enum GameEvent {
+
+    //Everything that can change in a game that anyone outside of the engine cares
+    //about. Each event carries up to four values, which mean the following for each
+    //kind of event.
+
+    //A new game started, and the board was cleared. (No values.)
+    GAME_STARTED,
+    //A new piece came into play: its type's ordinal, column and row.
+    PIECE_SPAWNED,
+    //The piece moved, fell or rotated: its column, row and rotation.
+    PIECE_MOVED,
+    //The piece rotated: its new rotation, and which of its wall kicks was used.
+    PIECE_ROTATED,
+    //The piece locked onto the board: its type's ordinal, column, row and rotation.
+    PIECE_LOCKED,
+    //Lines were cleared by the piece that just locked: how many, and a mask with a bit
+    //set for each row that was cleared, as the rows were numbered before the clear.
+    LINES_CLEARED,
+    //Garbage rows were pushed up from the bottom: how many, and the column of the hole.
+    GARBAGE_ADDED,
+    //The score or the line count changed: the score and the lines.
+    SCORE_CHANGED,
+    //The level changed: the level.
+    LEVEL_CHANGED,
+    //The game was paused or unpaused: 1 if it's now paused, 0 if not.
+    PAUSE_TOGGLED,
+    //The game was lost: the final score.
+    GAME_OVER
+}
@@ -0,0 +1,74 @@
+import java.util.Arrays;
+
+
+public class GameEvents {
+
+    //The events of one step, kept in parallel arrays of plain values so that raising
+    //an event never allocates. A step rarely raises more than a handful, but the
+    //arrays grow if one ever raises more than they hold.
+    private static final GameEvent[] EVENTS = GameEvent.values();
+    private static final int INITIAL_CAPACITY = 64;
+    private byte[] types;
+    private int[] values;
+    private int size;
+
+    public GameEvents() {
+        this.types = new byte[INITIAL_CAPACITY];
+        this.values = new int[INITIAL_CAPACITY * 4];
+    }
+
+    public void add(final GameEvent event, final int a, final int b, final int c, final int d) {
+        if (size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+            values = Arrays.copyOf(values, size * 8);
+        }
+        types[size] = (byte) event.ordinal();
+        values[size * 4] = a;
+        values[size * 4 + 1] = b;
+        values[size * 4 + 2] = c;
+        values[size * 4 + 3] = d;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public GameEvent getEvent(final int index) {
+        return EVENTS[types[index]];
+    }
+
+    public boolean contains(final GameEvent event) {
+        for (int i = 0; i < size; i++) {
+            if (types[i] == event.ordinal()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //The values carried by an event. What each one means depends on the kind of event.
+    public int getA(final int index) {
+        return values[index * 4];
+    }
+
+    public int getB(final int index) {
+        return values[index * 4 + 1];
+    }
+
+    public int getC(final int index) {
+        return values[index * 4 + 2];
+    }
+
+    public int getD(final int index) {
+        return values[index * 4 + 3];
+    }
+}
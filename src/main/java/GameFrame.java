@@ -0,0 +1,126 @@
+public class GameFrame {
+
+    //A copy of everything the panels paint, taken from the engine at the end of a tick.
+    //The engine is only ever touched by the game loop, so any other thread that paints
+    //works from a copy instead, and always sees the game as it was between two ticks.
+    private final byte[] colors;
+    private final TileType[] preview;
+    private long tick = -1;
+    private boolean isPaused;
+    private boolean isNewGame;
+    private boolean isGameOver;
+    private int score;
+    private int level;
+    private TileType pieceType;
+    private int pieceCol;
+    private int pieceRow;
+    private int pieceRotation;
+    private int dropRow;
+    private int previewCount;
+
+    public GameFrame() {
+        this.colors = new byte[BitBoard.ROW_COUNT * BitBoard.COL_COUNT];
+        this.preview = new TileType[GameEngine.MAX_PREVIEW];
+    }
+
+    public void copyFrom(final GameEngine engine) {
+        //Called on the game loop's thread. The ghost's row is worked out here too, so
+        //painting never has to look at the board's rows.
+        engine.getBoard().copyColors(colors);
+        this.tick = engine.getTick();
+        this.isPaused = engine.isPaused();
+        this.isNewGame = engine.isNewGame();
+        this.isGameOver = engine.isGameOver();
+        this.score = engine.getScore();
+        this.level = engine.getLevel();
+        this.pieceType = engine.getPieceType();
+        this.pieceCol = engine.getPieceCol();
+        this.pieceRow = engine.getPieceRow();
+        this.pieceRotation = engine.getPieceRotation();
+        this.dropRow = pieceType != null && !isNewGame && !isGameOver
+                ? engine.getBoard().getDropRow(pieceType, pieceCol, pieceRow, pieceRotation) : pieceRow;
+        this.previewCount = engine.getPreviewCount();
+        for (int i = 0; i < previewCount; i++) {
+            preview[i] = engine.getPreviewType(i);
+        }
+    }
+
+    public void copyFrom(final GameFrame other) {
+        System.arraycopy(other.colors, 0, colors, 0, colors.length);
+        System.arraycopy(other.preview, 0, preview, 0, preview.length);
+        this.tick = other.tick;
+        this.isPaused = other.isPaused;
+        this.isNewGame = other.isNewGame;
+        this.isGameOver = other.isGameOver;
+        this.score = other.score;
+        this.level = other.level;
+        this.pieceType = other.pieceType;
+        this.pieceCol = other.pieceCol;
+        this.pieceRow = other.pieceRow;
+        this.pieceRotation = other.pieceRotation;
+        this.dropRow = other.dropRow;
+        this.previewCount = other.previewCount;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public boolean isPaused() {
+        return isPaused;
+    }
+
+    public boolean isNewGame() {
+        return isNewGame;
+    }
+
+    public boolean isGameOver() {
+        return isGameOver;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getColor(final int x, final int y) {
+        //0 for an empty cell, BitBoard.GARBAGE for garbage, otherwise the TileType's
+        //ordinal plus one.
+        return colors[y * BitBoard.COL_COUNT + x];
+    }
+
+    public TileType getPieceType() {
+        return pieceType;
+    }
+
+    public int getPieceCol() {
+        return pieceCol;
+    }
+
+    public int getPieceRow() {
+        return pieceRow;
+    }
+
+    public int getPieceRotation() {
+        return pieceRotation;
+    }
+
+    public int getDropRow() {
+        return dropRow;
+    }
+
+    public TileType getNextPieceType() {
+        return getPreviewType(0);
+    }
+
+    public TileType getPreviewType(final int index) {
+        return index < previewCount ? preview[index] : null;
+    }
+
+    public int getPreviewCount() {
+        return previewCount;
+    }
+}
@@ -0,0 +1,7 @@
+public interface GameListener {
+
+    //Called by the engine at the end of every step in which anything happened, with
+    //every event of that step in the order they happened. Called from the thread that
+    //steps the engine, and the events are only valid until this returns.
+    void onEvents(GameEngine engine, GameEvents events);
+}
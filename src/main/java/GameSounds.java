@@ -0,0 +1,36 @@
+public class GameSounds implements GameListener {
+
+    //Plays the sound effect for each event of the game that has one.
+    private final SoundPlayer sounds;
+
+    public GameSounds(final SoundPlayer sounds) {
+        this.sounds = sounds;
+    }
+
+    @Override
+    public void onEvents(final GameEngine engine, final GameEvents events) {
+        for (int i = 0; i < events.size(); i++) {
+            switch (events.getEvent(i)) {
+                case PIECE_ROTATED:
+                    sounds.play(SoundEffect.ROTATE);
+                    break;
+
+                //A piece that clears lines only plays the line clear, which always
+                //comes right after the lock.
+                case PIECE_LOCKED:
+                    if (i + 1 == events.size() || events.getEvent(i + 1) != GameEvent.LINES_CLEARED) {
+                        sounds.play(SoundEffect.LOCK);
+                    }
+                    break;
+                case LINES_CLEARED:
+                    sounds.play(SoundEffect.LINE_CLEAR);
+                    break;
+                case GAME_OVER:
+                    sounds.play(SoundEffect.GAME_OVER);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
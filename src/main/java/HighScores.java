@@ -0,0 +1,430 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+
+public class HighScores implements Runnable {
+
+    //Every finished game is appended to the log, and nothing in the log is ever
+    //rewritten. Each record is its length, the entry, and a CRC32 of the entry, so a
+    //record torn by a crash is found and cut off the next time the log is opened.
+    //"TSCL" in ASCII.
+    private static final int LOG_MAGIC = 0x5453434C;
+    //The index holds where in the log the best TOP_COUNT entries are, and how much of
+    //the log it covers, so that only what was appended after it has to be read again.
+    //"TSCI" in ASCII.
+    private static final int INDEX_MAGIC = 0x54534349;
+    private static final int VERSION = 1;
+    private static final int LOG_HEADER = 8;
+    //Far more than a name and a replay's path will ever need. An entry that would still
+    //be larger keeps only the start of its name, and drops its replay.
+    private static final int MAX_RECORD = 4096;
+    private static final int MAX_NAME = 64;
+    //The fixed fields, and two empty strings.
+    private static final int MIN_RECORD = 40;
+    public static final int TOP_COUNT = 100;
+    private final Path logPath;
+    private final Path indexPath;
+    //Game overs are rare, so the entries are simply queued up for the writer thread,
+    //which owns the files and the index and does all of the work. That includes saving
+    //each game's replay, so that nothing is written from the game loop.
+    private final ConcurrentLinkedQueue<Submission> pending;
+    private final Thread thread;
+    private final Entry[] top;
+    private final long[] offsets;
+    private int count;
+    private FileChannel log;
+    private long logLength;
+    //A copy of the best entries, made after every change, for anyone to read.
+    private volatile Entry[] published;
+
+    public static class Entry {
+
+        private final String name;
+        private final int score;
+        private final int level;
+        private final int lines;
+        //How long the game went on for, in ticks.
+        private final long ticks;
+        //When the game ended, in milliseconds since the epoch.
+        private final long time;
+        //The game's seed, and where its replay was saved (empty if it wasn't).
+        private final long seed;
+        private final String replay;
+
+        public Entry(final String name, final int score, final int level, final int lines, final long ticks,
+                final long time, final long seed, final String replay) {
+            this.name = name;
+            this.score = score;
+            this.level = level;
+            this.lines = lines;
+            this.ticks = ticks;
+            this.time = time;
+            this.seed = seed;
+            this.replay = replay;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public int getLines() {
+            return lines;
+        }
+
+        public long getTicks() {
+            return ticks;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public String getReplay() {
+            return replay;
+        }
+    }
+
+    private static class Submission {
+
+        private final Entry entry;
+        //The replay to save to the entry's replay path, if any.
+        private final byte[] replay;
+
+        private Submission(final Entry entry, final byte[] replay) {
+            this.entry = entry;
+            this.replay = replay;
+        }
+    }
+
+    public HighScores(final Path directory) {
+        this.logPath = directory.resolve("scores.log");
+        this.indexPath = directory.resolve("scores.idx");
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.top = new Entry[TOP_COUNT];
+        this.offsets = new long[TOP_COUNT];
+        this.published = new Entry[0];
+        this.thread = new Thread(this, "Tetris Scores");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void submit(final Entry entry, final byte[] replay) {
+        //Called from the game loop when a game ends. Returns right away. The replay, if
+        //given, is saved to the entry's replay path before the entry is added, and the
+        //entry is kept without a replay if it can't be saved.
+        pending.add(new Submission(entry, replay));
+        LockSupport.unpark(thread);
+    }
+
+    public Entry getBest() {
+        final Entry[] entries = published;
+        return entries.length > 0 ? entries[0] : null;
+    }
+
+    public Entry[] getTop() {
+        return published.clone();
+    }
+
+    @Override
+    public void run() {
+        //Without the high scores, the replays are still saved.
+        boolean isOpen = true;
+        try {
+            open();
+        } catch (final IOException e) {
+            System.err.println("Could not open the high scores: " + e);
+            isOpen = false;
+        }
+        while (true) {
+            if (pending.isEmpty()) {
+                LockSupport.park(this);
+                continue;
+            }
+            try {
+                Submission submission;
+                while ((submission = pending.poll()) != null) {
+                    final Entry entry = saveReplay(submission);
+                    if (isOpen) {
+                        append(entry);
+                    }
+                }
+                if (isOpen) {
+                    log.force(false);
+                    writeIndex();
+                }
+            } catch (final IOException e) {
+                System.err.println("Could not save the high score: " + e);
+            }
+            if (isOpen) {
+                publish();
+            }
+        }
+    }
+
+    private static Entry saveReplay(final Submission submission) {
+        //Returns the entry to keep, which loses its replay if the replay couldn't be saved.
+        final Entry entry = submission.entry;
+        if (submission.replay == null) {
+            return entry;
+        }
+        try {
+            AtomicFiles.write(submission.replay, Paths.get(entry.replay));
+            return entry;
+        } catch (final IOException | RuntimeException e) {
+            System.err.println("Could not save the replay: " + e);
+            return new Entry(entry.name, entry.score, entry.level, entry.lines, entry.ticks, entry.time, entry.seed,
+                    "");
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(logPath.getParent());
+        this.log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (log.size() < LOG_HEADER) {
+            final ByteBuffer header = ByteBuffer.allocate(LOG_HEADER).putInt(LOG_MAGIC).putInt(VERSION);
+            header.flip();
+            log.truncate(0);
+            writeFully(header, 0);
+            log.force(false);
+        } else {
+            final ByteBuffer header = readFully(0, LOG_HEADER);
+            if (header.getInt() != LOG_MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a high score log: " + logPath);
+            }
+        }
+
+        //Start from the index if there's a usable one, and read whatever the log has
+        //gained since. Without one, the whole log is read to build it again.
+        final long indexed = readIndex();
+        final long start = indexed > 0 ? indexed : LOG_HEADER;
+        this.logLength = scan(start);
+        if (logLength < log.size()) {
+            System.err.println("Cut a damaged high score off the end of " + logPath);
+            log.truncate(logLength);
+        }
+        if (logLength != indexed) {
+            writeIndex();
+        }
+        publish();
+    }
+
+    private long readIndex() {
+        //Returns how much of the log the index covers, or 0 if it can't be used.
+        count = 0;
+        try {
+            final byte[] file = Files.readAllBytes(indexPath);
+            final ByteBuffer buffer = ByteBuffer.wrap(file);
+            if (file.length < 24 || buffer.getInt() != INDEX_MAGIC || buffer.getInt() != VERSION) {
+                return 0;
+            }
+            final CRC32 crc = new CRC32();
+            crc.update(file, 0, file.length - 4);
+            if ((int) crc.getValue() != buffer.getInt(file.length - 4)) {
+                return 0;
+            }
+            final long covered = buffer.getLong();
+            final int entries = buffer.getInt();
+            if (covered < LOG_HEADER || covered > log.size() || entries > TOP_COUNT
+                    || file.length != 24 + entries * 8) {
+                return 0;
+            }
+            for (int i = 0; i < entries; i++) {
+                final long offset = buffer.getLong();
+                offsets[i] = offset;
+                top[i] = readRecord(offset);
+            }
+            count = entries;
+            return covered;
+        } catch (final NoSuchFileException e) {
+            return 0;
+        } catch (final IOException e) {
+            count = 0;
+            return 0;
+        }
+    }
+
+    private long scan(final long start) throws IOException {
+        //Reads the log from start to its end, and returns where the good records end.
+        //Only a record cut short by the end of the log is left out of that, since that's
+        //all a crash while appending can leave behind. A damaged record with good ones
+        //after it is skipped, or if even its length is wrong, the log isn't opened at
+        //all rather than losing everything after it. Only entries good enough for the
+        //top are decoded.
+        final long size = log.size();
+        log.position(start);
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(log), 1 << 16));
+        final byte[] payload = new byte[MAX_RECORD];
+        final CRC32 crc = new CRC32();
+        long position = start;
+        while (size - position >= 8) {
+            final int length = in.readInt();
+            final long end = position + 8 + length;
+            if (length >= MIN_RECORD && length <= MAX_RECORD && end > size) {
+                break;
+            }
+            if (length < MIN_RECORD || length > MAX_RECORD) {
+                if (size - position < 8 + MIN_RECORD) {
+                    break;
+                }
+                throw new IOException("Damaged high score at byte " + position + " of " + logPath);
+            }
+            in.readFully(payload, 0, length);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != in.readInt()) {
+                if (end == size) {
+                    break;
+                }
+                System.err.println("Skipped a damaged high score at byte " + position + " of " + logPath);
+            } else {
+                final int score = ByteBuffer.wrap(payload, 8, 4).getInt();
+                if (qualifies(score)) {
+                    insert(decode(payload, length), position);
+                }
+            }
+            position = end;
+        }
+        return position;
+    }
+
+    private void append(final Entry entry) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeLong(entry.time);
+        out.writeInt(entry.score);
+        out.writeInt(entry.level);
+        out.writeInt(entry.lines);
+        out.writeLong(entry.ticks);
+        out.writeLong(entry.seed);
+        out.writeUTF(entry.name);
+        out.writeUTF(entry.replay);
+        final int length = bytes.size() - 4;
+        if (length > MAX_RECORD) {
+            System.err.println("Dropped the replay from a high score that was too large to keep");
+            append(new Entry(entry.name.substring(0, Math.min(entry.name.length(), MAX_NAME)), entry.score,
+                    entry.level, entry.lines, entry.ticks, entry.time, entry.seed, ""));
+            return;
+        }
+        final CRC32 crc = new CRC32();
+        final byte[] record = Arrays.copyOf(bytes.toByteArray(), length + 8);
+        crc.update(record, 4, length);
+        final ByteBuffer buffer = ByteBuffer.wrap(record);
+        buffer.putInt(0, length).putInt(length + 4, (int) crc.getValue());
+        writeFully(buffer, logLength);
+        if (qualifies(entry.score)) {
+            insert(entry, logLength);
+        }
+        logLength += record.length;
+    }
+
+    private Entry readRecord(final long offset) throws IOException {
+        final int length = readFully(offset, 4).getInt();
+        if (length < 0 || length > MAX_RECORD) {
+            throw new IOException("Corrupt high score at " + offset);
+        }
+        final ByteBuffer record = readFully(offset + 4, length + 4);
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, length);
+        if ((int) crc.getValue() != record.getInt(length)) {
+            throw new IOException("Corrupt high score at " + offset);
+        }
+        return decode(record.array(), length);
+    }
+
+    private static Entry decode(final byte[] payload, final int length) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, 0, length));
+        final long time = in.readLong();
+        final int score = in.readInt();
+        final int level = in.readInt();
+        final int lines = in.readInt();
+        final long ticks = in.readLong();
+        final long seed = in.readLong();
+        final String name = in.readUTF();
+        final String replay = in.readUTF();
+        return new Entry(name, score, level, lines, ticks, time, seed, replay);
+    }
+
+    private boolean qualifies(final int score) {
+        return count < TOP_COUNT || score > top[count - 1].score;
+    }
+
+    private void insert(final Entry entry, final long offset) {
+        //The top is kept sorted from the best down. An entry goes after any with the same
+        //score, since those got there first.
+        int index = Math.min(count, TOP_COUNT - 1);
+        while (index > 0 && top[index - 1].score < entry.score) {
+            top[index] = top[index - 1];
+            offsets[index] = offsets[index - 1];
+            index--;
+        }
+        top[index] = entry;
+        offsets[index] = offset;
+        count = Math.min(count + 1, TOP_COUNT);
+    }
+
+    private void writeIndex() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(24 + count * 8);
+        buffer.putInt(INDEX_MAGIC).putInt(VERSION).putLong(logLength).putInt(count);
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(offsets[i]);
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        AtomicFiles.write(buffer.array(), indexPath);
+    }
+
+    private void publish() {
+        this.published = Arrays.copyOf(top, count);
+    }
+
+    private void writeFully(final ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += log.write(buffer, position);
+        }
+    }
+
+    private ByteBuffer readFully(long position, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            final int read = log.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Truncated high score log");
+            }
+            position += read;
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
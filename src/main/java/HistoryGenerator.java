@@ -0,0 +1,69 @@
+import java.io.IOException;
+
+
+public class HistoryGenerator implements PieceGenerator {
+
+    private static final TileType[] TYPES = TileType.values();
+    private static final int TYPE_BITS = 3;
+    //How many of the last pieces are remembered, and how many times a piece that's
+    //among them is rerolled before it's dealt anyway.
+    private static final int HISTORY_LENGTH = 4;
+    private static final int ROLLS = 6;
+    //A new game starts as if the last pieces had been these, which keeps the awkward S
+    //and Z pieces from coming first.
+    private static final byte[] START = {
+            (byte) TileType.TypeS.ordinal(), (byte) TileType.TypeZ.ordinal(),
+            (byte) TileType.TypeS.ordinal(), (byte) TileType.TypeZ.ordinal()
+    };
+    private final Rng random;
+    //The last pieces dealt, newest first.
+    private final byte[] history;
+
+    public HistoryGenerator(final Rng random) {
+        this.random = random;
+        this.history = new byte[HISTORY_LENGTH];
+        reset();
+    }
+
+    @Override
+    public int next() {
+        int type = random.nextInt(TYPES.length);
+        for (int roll = 1; roll < ROLLS && isRecent(type); roll++) {
+            type = random.nextInt(TYPES.length);
+        }
+        System.arraycopy(history, 0, history, 1, HISTORY_LENGTH - 1);
+        history[0] = (byte) type;
+        return type;
+    }
+
+    private boolean isRecent(final int type) {
+        for (final byte recent : history) {
+            if (recent == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        System.arraycopy(START, 0, history, 0, HISTORY_LENGTH);
+    }
+
+    @Override
+    public void save(final Snapshot snapshot) {
+        for (final byte type : history) {
+            snapshot.write(type, TYPE_BITS);
+        }
+    }
+
+    @Override
+    public void load(final Snapshot snapshot) throws IOException {
+        for (int i = 0; i < HISTORY_LENGTH; i++) {
+            history[i] = (byte) snapshot.readInt(TYPE_BITS);
+            if (history[i] >= TYPES.length) {
+                throw new IOException("Corrupt snapshot");
+            }
+        }
+    }
+}
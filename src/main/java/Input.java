@@ -0,0 +1,12 @@
+public enum Input {
+
+    MOVE_LEFT,
+    MOVE_RIGHT,
+    ROTATE_CLOCKWISE,
+    ROTATE_ANTICLOCKWISE,
+    DROP,
+    DROP_RELEASE,
+    HARD_DROP,
+    PAUSE,
+    START
+}
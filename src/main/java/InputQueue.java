@@ -0,0 +1,60 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class InputQueue {
+
+    private static final Input[] INPUTS = Input.values();
+    private final int mask;
+    private final byte[] inputs;
+    private final long[] times;
+    //The producer only ever writes tail and the consumer only ever writes head, so
+    //neither needs a lock. An entry is written before tail moves past it, and the
+    //ordered (lazySet) write of tail makes the entry visible to the consumer with it.
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    //The time the last input returned by poll() was offered at, so the consumer can
+    //tell how long it waited.
+    private long polledTime;
+
+    public InputQueue(final int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.inputs = new byte[capacity];
+        this.times = new long[capacity];
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+    }
+
+    public boolean offer(final Input input, final long time) {
+        //Only called from the producer thread. If the consumer has fallen so far behind
+        //that the queue is full, the input is dropped rather than waiting for room.
+        final long t = tail.get();
+        if (t - head.get() > mask) {
+            return false;
+        }
+        final int index = (int) t & mask;
+        inputs[index] = (byte) input.ordinal();
+        times[index] = time;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    public Input poll() {
+        //Only called from the consumer thread. Returns null once the queue is empty.
+        final long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        final int index = (int) h & mask;
+        final Input input = INPUTS[inputs[index]];
+        this.polledTime = times[index];
+        head.lazySet(h + 1);
+        return input;
+    }
+
+    public long getPolledTime() {
+        return polledTime;
+    }
+}
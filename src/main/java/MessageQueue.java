@@ -0,0 +1,44 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class MessageQueue {
+
+    //A bounded single-producer/single-consumer queue of messages packed into longs,
+    //built the same way as the InputQueue.
+    private final int mask;
+    private final long[] messages;
+    private final AtomicLong head;
+    private final AtomicLong tail;
+
+    public MessageQueue(final int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.messages = new long[capacity];
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+    }
+
+    public boolean offer(final long message) {
+        final long t = tail.get();
+        if (t - head.get() > mask) {
+            return false;
+        }
+        messages[(int) t & mask] = message;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    public long poll() {
+        //Only call this after isEmpty() said there's a message.
+        final long h = head.get();
+        final long message = messages[(int) h & mask];
+        head.lazySet(h + 1);
+        return message;
+    }
+}
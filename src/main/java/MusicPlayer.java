@@ -0,0 +1,66 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+public class MusicPlayer {
+
+    private final String resource;
+    private final AudioFormat format;
+    private AudioInputStream stream;
+    private boolean isMissing;
+
+    public MusicPlayer(final String resource, final AudioFormat format) {
+        this.resource = resource;
+        this.format = format;
+    }
+
+    public int read(final byte[] buffer, final int length) {
+        //Fills the buffer with the next part of the track. To loop, the track is opened
+        //again as soon as it ends and the buffer is filled on from its start, so there's
+        //no gap between the end and the start. If the track can't be played, the rest
+        //of the buffer is silence.
+        int filled = 0;
+        while (filled < length && !isMissing) {
+            try {
+                if (stream == null) {
+                    stream = openTrack();
+                    if (stream == null) {
+                        System.err.println("Music not found: " + resource);
+                        this.isMissing = true;
+                        break;
+                    }
+                }
+                final int read = stream.read(buffer, filled, length - filled);
+                if (read > 0) {
+                    filled += read;
+                } else {
+                    stream.close();
+                    stream = null;
+                }
+            } catch (final IOException | UnsupportedAudioFileException | IllegalArgumentException e) {
+                System.err.println("Music disabled: " + e);
+                this.isMissing = true;
+            }
+        }
+        for (int i = filled; i < length; i++) {
+            buffer[i] = 0;
+        }
+        return length;
+    }
+
+    private AudioInputStream openTrack() throws IOException, UnsupportedAudioFileException {
+        //Read from the classpath, so the track is found inside of the jar too. The audio
+        //file readers need mark and reset, which the raw resource stream may not have.
+        final InputStream in = MusicPlayer.class.getResourceAsStream(resource);
+        if (in == null) {
+            return null;
+        }
+        final AudioInputStream source = AudioSystem.getAudioInputStream(new BufferedInputStream(in));
+        return AudioSystem.getAudioInputStream(format, source);
+    }
+}
@@ -0,0 +1,103 @@
+import javax.swing.*;
+import java.awt.*;
+
+
+public class OpponentPanel extends JPanel {
+
+    //A small view of the opponent's board in the versus mode.
+    private static final int TILE_SIZE = 10;
+    private static final int SHADE_WIDTH = 2;
+    private static final int COL_COUNT = BitBoard.COL_COUNT;
+    private static final int HIDDEN_ROW_COUNT = 2;
+    private static final int VISIBLE_ROW_COUNT = BitBoard.ROW_COUNT - HIDDEN_ROW_COUNT;
+    private static final int INSET = 10;
+    private static final int BOARD_Y = 40;
+    private static final int PANEL_WIDTH = COL_COUNT * TILE_SIZE + INSET * 2;
+    private static final Font SMALL_FONT = new Font("Tahoma", Font.BOLD, 11);
+    private static final Font LARGE_FONT = new Font("Tahoma", Font.BOLD, 13);
+    private static final Color DRAW_COLOR = new Color(128, 192, 128);
+    private static final String SCORE_LABEL = "Pont: ";
+    private final VersusGame versus;
+    //What the Swing painting works from. The game loop publishes the opponent's game
+    //here, since it's stepped on the game loop's thread like our own.
+    private final SharedFrame source;
+    private final GameFrame frame;
+    private final TileSprites sprites;
+    private final TextGlyphs digits;
+    //Where the score goes, right after its label. Measured on the first paint.
+    private int scoreX = -1;
+    private long paintedTick = -1;
+    private boolean paintedConnected = true;
+
+    public OpponentPanel(final VersusGame versus, final SharedFrame source) {
+        this.versus = versus;
+        this.source = source;
+        this.frame = new GameFrame();
+        this.sprites = TileSprites.forSize(TILE_SIZE, SHADE_WIDTH);
+        this.digits = new TextGlyphs(SMALL_FONT, DRAW_COLOR);
+
+        setPreferredSize(new Dimension(PANEL_WIDTH, BoardPanel.PANEL_HEIGHT));
+        setBackground(Color.BLACK);
+    }
+
+    public void refresh() {
+        //The opponent's game only changes when one of its frames arrives.
+        final long tick = versus.getOpponent().getTick();
+        if (tick != paintedTick || versus.isConnected() != paintedConnected) {
+            paintedTick = tick;
+            paintedConnected = versus.isConnected();
+            repaint();
+        }
+    }
+
+    @Override
+    public void paintComponent(final Graphics g) {
+        source.read(frame);
+        paintFrame(g, frame);
+    }
+
+    public void paintFrame(final Graphics g, final GameFrame frame) {
+        //Clear to the background ourselves, like the BoardPanel does.
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+
+        g.setColor(DRAW_COLOR);
+        g.setFont(LARGE_FONT);
+        g.drawString("Ellenfél", INSET, 25);
+        g.setFont(SMALL_FONT);
+        if (scoreX < 0) {
+            scoreX = INSET + g.getFontMetrics().stringWidth(SCORE_LABEL);
+        }
+        g.drawString(SCORE_LABEL, INSET, BOARD_Y + VISIBLE_ROW_COUNT * TILE_SIZE + 20);
+        digits.draw(g, frame.getScore(), scoreX, BOARD_Y + VISIBLE_ROW_COUNT * TILE_SIZE + 20);
+
+        for (int y = HIDDEN_ROW_COUNT; y < BitBoard.ROW_COUNT; y++) {
+            for (int x = 0; x < COL_COUNT; x++) {
+                final int color = frame.getColor(x, y);
+                if (color != 0) {
+                    sprites.drawColor(g, color, INSET + x * TILE_SIZE, BOARD_Y + (y - HIDDEN_ROW_COUNT) * TILE_SIZE);
+                }
+            }
+        }
+        final TileType type = frame.getPieceType();
+        if (type != null && !frame.isGameOver() && !frame.isNewGame()) {
+            final int rotation = frame.getPieceRotation();
+            for (int cell = 0; cell < type.getCellCount(rotation); cell++) {
+                final int row = frame.getPieceRow() + type.getCellY(rotation, cell);
+                if (row >= HIDDEN_ROW_COUNT) {
+                    sprites.draw(g, type, INSET + (frame.getPieceCol() + type.getCellX(rotation, cell)) * TILE_SIZE,
+                            BOARD_Y + (row - HIDDEN_ROW_COUNT) * TILE_SIZE);
+                }
+            }
+        }
+
+        g.setColor(Color.WHITE);
+        g.drawRect(INSET, BOARD_Y, COL_COUNT * TILE_SIZE, VISIBLE_ROW_COUNT * TILE_SIZE);
+        final String msg = !versus.isConnected() ? "Nincs kapcsolat" : frame.isGameOver() ? "JÁTÉK VÉGE"
+                : frame.isNewGame() ? "Vár..." : frame.isPaused() ? "SZÜNET" : null;
+        if (msg != null) {
+            g.drawString(msg, INSET + (COL_COUNT * TILE_SIZE - g.getFontMetrics().stringWidth(msg)) / 2,
+                    BOARD_Y + VISIBLE_ROW_COUNT * TILE_SIZE / 2);
+        }
+    }
+}
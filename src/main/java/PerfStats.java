@@ -0,0 +1,283 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+
+public class PerfStats {
+
+    //The numbers shown are gathered over a window of this length, then the window
+    //starts over.
+    private static final long WINDOW_NANOS = 1000000000L;
+    //How many of the most recent frame times are kept for the graph.
+    public static final int RECENT_FRAMES = 128;
+    public static final int LINE_COUNT = 10;
+    //Room for the longest line, so building one never has to grow it.
+    public static final int MAX_LINE_LENGTH = 64;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+    private final Histogram frameTimes;
+    private final Histogram overshoot;
+    private final Histogram boardPaint;
+    private final Histogram sidePaint;
+    private final Histogram soundLatency;
+    //From a key press to the game loop applying it.
+    private final Histogram inputLatency;
+    private final long[] recentFrames;
+    private final GarbageCollectorMXBean[] collectors;
+    private final ThreadMXBean threads;
+    //The threads whose allocations are counted: the game loop, and whichever thread
+    //paints the panels (the EDT, or the render thread in the active mode).
+    private long loopThread = -1;
+    private long paintThread = -1;
+    private int recentIndex;
+    private long lastFrame;
+    private long windowStart;
+    private int ticks;
+    private long totalDropped;
+    private long droppedFrames;
+    private long allocated;
+    private long gcCount;
+    private long gcMillis;
+    //Only set when the game is broadcast to spectators.
+    private SpectatorServer spectators;
+    private long spectatorResyncs;
+    private long spectatorBytes;
+    private volatile boolean isVisible;
+    private final StringBuilder[] lines;
+    private volatile int version;
+
+    public PerfStats() {
+        this.frameTimes = new Histogram();
+        this.overshoot = new Histogram();
+        this.boardPaint = new Histogram();
+        this.sidePaint = new Histogram();
+        this.soundLatency = new Histogram();
+        this.inputLatency = new Histogram();
+        this.recentFrames = new long[RECENT_FRAMES];
+        final List<GarbageCollectorMXBean> beans = ManagementFactory.getGarbageCollectorMXBeans();
+        this.collectors = beans.toArray(new GarbageCollectorMXBean[0]);
+        this.threads = ManagementFactory.getThreadMXBean();
+        this.lines = new StringBuilder[LINE_COUNT];
+        for (int i = 0; i < LINE_COUNT; i++) {
+            lines[i] = new StringBuilder(MAX_LINE_LENGTH);
+        }
+    }
+
+    public synchronized void recordFrame(final long now, final long late, final int frames, final long dropped) {
+        //Called by the game loop once per frame, right after the scheduler wakes it, with
+        //how many frames the scheduler has dropped so far.
+        if (loopThread == -1) {
+            loopThread = Thread.currentThread().getId();
+            windowStart = now;
+            allocated = getAllocatedBytes();
+            gcCount = getGcCount();
+            gcMillis = getGcMillis();
+            droppedFrames = dropped;
+        } else {
+            final long frameTime = now - lastFrame;
+            frameTimes.record(frameTime);
+            recentFrames[recentIndex] = frameTime;
+            recentIndex = (recentIndex + 1) % RECENT_FRAMES;
+        }
+        lastFrame = now;
+        overshoot.record(late);
+        ticks += frames;
+        this.totalDropped = dropped;
+        if (now - windowStart >= WINDOW_NANOS) {
+            publish(now);
+        }
+    }
+
+    public synchronized void recordBoardPaint(final long nanos) {
+        setPaintThread();
+        boardPaint.record(nanos);
+    }
+
+    public synchronized void recordSidePaint(final long nanos) {
+        setPaintThread();
+        sidePaint.record(nanos);
+    }
+
+    public synchronized void recordSoundLatency(final long nanos) {
+        soundLatency.record(nanos);
+    }
+
+    public synchronized void recordInputLatency(final long nanos) {
+        inputLatency.record(nanos);
+    }
+
+    private void setPaintThread() {
+        //Start counting the painting thread's allocations from the moment it's first
+        //seen, rather than charging everything it allocated before to this window.
+        final long id = Thread.currentThread().getId();
+        if (id != paintThread && loopThread != -1) {
+            allocated -= getAllocatedBytes();
+            paintThread = id;
+            allocated += getAllocatedBytes();
+        } else {
+            paintThread = id;
+        }
+    }
+
+    public synchronized void setSpectators(final SpectatorServer spectators) {
+        this.spectators = spectators;
+        this.spectatorResyncs = spectators.getResyncs();
+        this.spectatorBytes = spectators.getBytesSent();
+    }
+
+    public synchronized int copyRecentFrames(final long[] frames) {
+        //Oldest first.
+        for (int i = 0; i < RECENT_FRAMES; i++) {
+            frames[i] = recentFrames[(recentIndex + i) % RECENT_FRAMES];
+        }
+        return RECENT_FRAMES;
+    }
+
+    private void publish(final long now) {
+        //Only the text is built here, once per window, into lines that are reused from
+        //one window to the next, so that not even this allocates. Everything recorded
+        //per frame goes into histograms and arrays that were allocated up front. The
+        //numbers are written out by hand, always with a decimal point whatever the
+        //locale.
+        final double seconds = (now - windowStart) / 1e9;
+        final long allocatedNow = getAllocatedBytes();
+        final long gcCountNow = getGcCount();
+        final long gcMillisNow = getGcMillis();
+        line(0).append("frame p50 ");
+        appendMillis(lines[0], frameTimes.getPercentile(50), 1).append(" p99 ");
+        appendMillis(lines[0], frameTimes.getPercentile(99), 1).append(" max ");
+        appendMillis(lines[0], frameTimes.getMax(), 1).append(" ms");
+        appendFixed(line(1).append("ticks/s "), ticks / seconds, 0).append(", dropped ")
+                .append(totalDropped - droppedFrames);
+        line(2).append("board p50 ");
+        appendMillis(lines[2], boardPaint.getPercentile(50), 2).append(" p99 ");
+        appendMillis(lines[2], boardPaint.getPercentile(99), 2).append(" ms");
+        line(3).append("side p50 ");
+        appendMillis(lines[3], sidePaint.getPercentile(50), 2).append(" p99 ");
+        appendMillis(lines[3], sidePaint.getPercentile(99), 2).append(" ms");
+        line(4).append("overshoot p50 ");
+        appendMillis(lines[4], overshoot.getPercentile(50), 2).append(" max ");
+        appendMillis(lines[4], overshoot.getMax(), 2).append(" ms");
+        if (allocatedNow < 0) {
+            line(5).append("alloc n/a");
+        } else {
+            appendFixed(line(5).append("alloc "), (allocatedNow - allocated) / 1024.0 / seconds, 1).append(" KB/s");
+        }
+        line(6).append("gc ").append(gcCountNow - gcCount).append(", ").append(gcMillisNow - gcMillis).append(" ms");
+        if (soundLatency.getCount() == 0) {
+            line(7).append("sfx latency -");
+        } else {
+            line(7).append("sfx latency p50 ");
+            appendMillis(lines[7], soundLatency.getPercentile(50), 1).append(" max ");
+            appendMillis(lines[7], soundLatency.getMax(), 1).append(" ms");
+        }
+        if (spectators == null) {
+            line(8).append("spectators -");
+        } else {
+            final long resyncsNow = spectators.getResyncs();
+            final long bytesNow = spectators.getBytesSent();
+            line(8).append("spectators ").append(spectators.getClientCount()).append(", resyncs ")
+                    .append(resyncsNow - spectatorResyncs).append(", ");
+            appendFixed(lines[8], (bytesNow - spectatorBytes) / 1024.0 / seconds, 1).append(" KB/s");
+            spectatorResyncs = resyncsNow;
+            spectatorBytes = bytesNow;
+        }
+        if (inputLatency.getCount() == 0) {
+            line(9).append("input latency -");
+        } else {
+            line(9).append("input latency p50 ");
+            appendMillis(lines[9], inputLatency.getPercentile(50), 1).append(" max ");
+            appendMillis(lines[9], inputLatency.getMax(), 1).append(" ms");
+        }
+        this.version++;
+
+        frameTimes.reset();
+        overshoot.reset();
+        boardPaint.reset();
+        sidePaint.reset();
+        soundLatency.reset();
+        inputLatency.reset();
+        windowStart = now;
+        ticks = 0;
+        droppedFrames = totalDropped;
+        allocated = allocatedNow;
+        gcCount = gcCountNow;
+        gcMillis = gcMillisNow;
+    }
+
+    private long getAllocatedBytes() {
+        //Per thread allocation counters are a HotSpot extension, so they may be missing.
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        final com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+        long bytes = Math.max(0, hotspot.getThreadAllocatedBytes(loopThread));
+        if (paintThread != -1 && paintThread != loopThread) {
+            bytes += Math.max(0, hotspot.getThreadAllocatedBytes(paintThread));
+        }
+        return bytes;
+    }
+
+    private long getGcCount() {
+        long count = 0;
+        for (final GarbageCollectorMXBean collector : collectors) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private long getGcMillis() {
+        long millis = 0;
+        for (final GarbageCollectorMXBean collector : collectors) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private StringBuilder line(final int index) {
+        lines[index].setLength(0);
+        return lines[index];
+    }
+
+    private static StringBuilder appendMillis(final StringBuilder line, final long nanos, final int decimals) {
+        return appendFixed(line, nanos / NANOS_PER_MILLI, decimals);
+    }
+
+    private static StringBuilder appendFixed(final StringBuilder line, final double value, final int decimals) {
+        //Like %.Nf, for values that aren't negative.
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) {
+            scale *= 10;
+        }
+        final long scaled = Math.round(Math.max(0.0, value) * scale);
+        line.append(scaled / scale);
+        if (decimals > 0) {
+            line.append('.');
+            final long fraction = scaled % scale;
+            for (long digit = scale / 10; digit > 1 && fraction < digit; digit /= 10) {
+                line.append('0');
+            }
+            line.append(fraction);
+        }
+        return line;
+    }
+
+    public void toggleVisible() {
+        this.isVisible = !isVisible;
+    }
+
+    public boolean isVisible() {
+        return isVisible;
+    }
+
+    public synchronized int copyLine(final int index, final char[] line) {
+        //Copies as much of the line as fits, and returns how much that was.
+        final int length = Math.min(lines[index].length(), line.length);
+        lines[index].getChars(0, length, line, 0);
+        return length;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+}
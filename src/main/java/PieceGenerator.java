@@ -0,0 +1,16 @@
+import java.io.IOException;
+
+
+public interface PieceGenerator {
+
+    //Deals the next piece, as the ordinal of its TileType. Generators draw from the
+    //engine's Rng, so the same seed always deals the same pieces.
+    int next();
+
+    //Forgets everything dealt so far, when a new game starts.
+    void reset();
+
+    void save(Snapshot snapshot);
+
+    void load(Snapshot snapshot) throws IOException;
+}
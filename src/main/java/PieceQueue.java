@@ -0,0 +1,55 @@
+public class PieceQueue {
+
+    //The upcoming pieces, as TileType ordinals, in a ring of bytes. The engine keeps it
+    //topped up to the preview length, so taking a piece never has to wait for one.
+    private final int mask;
+    private final byte[] pieces;
+    private int head;
+    private int size;
+
+    public PieceQueue(final int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.pieces = new byte[capacity];
+    }
+
+    public void clear() {
+        this.head = 0;
+        this.size = 0;
+    }
+
+    public boolean offer(final int type) {
+        if (size > mask) {
+            return false;
+        }
+        pieces[(head + size) & mask] = (byte) type;
+        size++;
+        return true;
+    }
+
+    public int poll() {
+        //Returns -1 if the queue is empty.
+        if (size == 0) {
+            return -1;
+        }
+        final int type = pieces[head];
+        head = (head + 1) & mask;
+        size--;
+        return type;
+    }
+
+    public int peek(final int index) {
+        //The piece index places from the front, or -1 if there aren't that many.
+        return index < size ? pieces[(head + index) & mask] : -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,140 @@
+import java.util.Arrays;
+
+
+public class PlacementSearch {
+
+    //A search state is a piece position packed into one int. The offsets leave room
+    //for the positions just outside of the board that a piece with empty edge
+    //columns or rows can still legally occupy.
+    private static final int COL_OFFSET = 3;
+    private static final int ROW_OFFSET = 3;
+    private static final int COL_RANGE = BitBoard.COL_COUNT + COL_OFFSET;
+    private static final int ROW_RANGE = BitBoard.ROW_COUNT + ROW_OFFSET;
+    private static final int STATE_COUNT = COL_RANGE * ROW_RANGE * 4;
+    private final int[] visited;
+    private final int[] parents;
+    private final int[] queue;
+    private final int[] landings;
+    private int stamp;
+
+    public PlacementSearch() {
+        this.visited = new int[STATE_COUNT];
+        this.parents = new int[STATE_COUNT];
+        this.queue = new int[STATE_COUNT];
+        this.landings = new int[STATE_COUNT];
+    }
+
+    public int search(final BitBoard board, final TileType type, final int col, final int row, final int rotation) {
+        //Rather than clearing the visited array before every search, each search uses
+        //a new stamp and a state counts as visited only if it carries the current one.
+        if (++stamp == 0) {
+            Arrays.fill(visited, 0);
+            stamp = 1;
+        }
+        if (!board.isValidAndEmpty(type, col, row, rotation)) {
+            return 0;
+        }
+
+        //A breadth first search over every position the piece can reach with the same
+        //moves a player has: left, right, both rotations (with wall kicks) and falling
+        //one row. Any position the piece can't fall from is a final placement. Since
+        //the search is breadth first, the path to every state is a shortest one.
+        int head = 0;
+        int tail = 0;
+        int landingCount = 0;
+        final int start = encode(col, row, rotation);
+        visited[start] = stamp;
+        parents[start] = -1;
+        queue[tail++] = start;
+        while (head < tail) {
+            final int state = queue[head++];
+            final int x = getCol(state);
+            final int y = getRow(state);
+            final int r = getRotation(state);
+            if (board.isValidAndEmpty(type, x - 1, y, r)) {
+                tail = visit(state, encode(x - 1, y, r), tail);
+            }
+            if (board.isValidAndEmpty(type, x + 1, y, r)) {
+                tail = visit(state, encode(x + 1, y, r), tail);
+            }
+            for (int turn = 1; turn <= 3; turn += 2) {
+                final int newRotation = (r + turn) & 3;
+                final int kick = board.findKick(type, x, y, r, newRotation);
+                if (kick >= 0) {
+                    tail = visit(state, encode(x + type.getKickX(r, newRotation, kick),
+                            y + type.getKickY(r, newRotation, kick), newRotation), tail);
+                }
+            }
+            if (board.isValidAndEmpty(type, x, y + 1, r)) {
+                tail = visit(state, encode(x, y + 1, r), tail);
+            } else {
+                landings[landingCount++] = state;
+            }
+        }
+        return landingCount;
+    }
+
+    private int visit(final int parent, final int state, final int tail) {
+        if (visited[state] == stamp) {
+            return tail;
+        }
+        visited[state] = stamp;
+        parents[state] = parent;
+        queue[tail] = state;
+        return tail + 1;
+    }
+
+    public int getLanding(final int landing) {
+        return landings[landing];
+    }
+
+    public int getPath(final int state, final int[] path) {
+        //Walk the parent links back to the start and write the states in the order the
+        //piece passes through them, excluding the start state itself.
+        int length = 0;
+        for (int current = state; parents[current] != -1; current = parents[current]) {
+            length++;
+        }
+        int index = length;
+        for (int current = state; parents[current] != -1; current = parents[current]) {
+            path[--index] = current;
+        }
+        return length;
+    }
+
+    public static long getFootprint(final TileType type, final int state) {
+        //Identifies the board cells a placement covers. Some pieces cover the same cells
+        //from different rotations (all of the O's, and pairs of the I, S and Z), and
+        //those placements only need to be looked at once.
+        final int rotation = getRotation(state);
+        final int top = type.getTopInset(rotation);
+        final int bottom = type.getDimension() - type.getBottomInset(rotation);
+        final int left = type.getLeftInset(rotation);
+        long footprint = getRow(state) + top + ROW_OFFSET;
+        for (int y = top; y <= bottom; y++) {
+            footprint = footprint << BitBoard.COL_COUNT + 3 | (long) (type.getRowMask(rotation, y) >>> left)
+                    << (getCol(state) + left);
+        }
+        return footprint;
+    }
+
+    public static int encode(final int col, final int row, final int rotation) {
+        return (rotation * ROW_RANGE + row + ROW_OFFSET) * COL_RANGE + col + COL_OFFSET;
+    }
+
+    public static int getCol(final int state) {
+        return state % COL_RANGE - COL_OFFSET;
+    }
+
+    public static int getRow(final int state) {
+        return state / COL_RANGE % ROW_RANGE - ROW_OFFSET;
+    }
+
+    public static int getRotation(final int state) {
+        return state / (COL_RANGE * ROW_RANGE);
+    }
+
+    public static int getMaxPathLength() {
+        return STATE_COUNT;
+    }
+}
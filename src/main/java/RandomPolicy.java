@@ -0,0 +1,43 @@
+import java.util.Random;
+
+
+public class RandomPolicy implements BotPolicy {
+
+    //Give up on reaching the target after this many frames (for example because the
+    //path is blocked) and just drop the piece where it is.
+    private static final int MAX_ATTEMPTS = 16;
+    private final Random random;
+    private int piece = -1;
+    private int targetCol;
+    private int targetRotation;
+    private int attempts;
+
+    public RandomPolicy(final long seed) {
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public Input nextInput(final GameEngine engine) {
+        if (engine.isNewGame() || engine.isGameOver()) {
+            return Input.START;
+        }
+
+        //Pick a random rotation and column whenever a new piece shows up.
+        if (engine.getPieces() != piece) {
+            this.piece = engine.getPieces();
+            this.targetRotation = random.nextInt(4);
+            this.targetCol = random.nextInt(BitBoard.COL_COUNT) - engine.getPieceType().getLeftInset(targetRotation);
+            this.attempts = 0;
+        }
+        if (attempts++ < MAX_ATTEMPTS) {
+            if (engine.getPieceRotation() != targetRotation) {
+                return Input.ROTATE_CLOCKWISE;
+            } else if (engine.getPieceCol() < targetCol) {
+                return Input.MOVE_RIGHT;
+            } else if (engine.getPieceCol() > targetCol) {
+                return Input.MOVE_LEFT;
+            }
+        }
+        return Input.HARD_DROP;
+    }
+}
@@ -0,0 +1,23 @@
+public enum Randomizer {
+
+    //Every piece is picked independently. Long droughts of a piece can happen, but
+    //it's how the game has always dealt, and what old replays were recorded with.
+    UNIFORM,
+    //All seven pieces are shuffled into a bag and dealt, then the bag is refilled. A
+    //piece never waits more than 12 pieces for its turn.
+    BAG,
+    //Pieces are picked independently, but a piece that was one of the last few dealt
+    //is rerolled a number of times first.
+    HISTORY;
+
+    public PieceGenerator create(final Rng random) {
+        switch (this) {
+            case BAG:
+                return new BagGenerator(random);
+            case HISTORY:
+                return new HistoryGenerator(random);
+            default:
+                return new UniformGenerator(random);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.locks.LockSupport;
+
+
+public class RenderCanvas extends Canvas implements Runnable {
+
+    //The frame rate used for the capped mode when the screen doesn't report its
+    //refresh rate.
+    private static final int DEFAULT_FPS = 60;
+    private final BoardPanel board;
+    private final SidePanel side;
+    //Drawn to the left of the board in the versus mode, otherwise null.
+    private final OpponentPanel opponent;
+    //The game loop publishes the games here once per frame. Every frame we draw starts
+    //by taking a copy of them, and all of the panels are painted from that copy, so
+    //they all show the same tick and never catch the engine halfway through one.
+    private final SharedFrame source;
+    private final SharedFrame opponentSource;
+    private final GameFrame frame;
+    private final GameFrame opponentFrame;
+    private final int fps;
+
+    public RenderCanvas(final BoardPanel board, final SidePanel side, final OpponentPanel opponent,
+            final SharedFrame source, final SharedFrame opponentSource, final int fps) {
+        this.board = board;
+        this.side = side;
+        this.opponent = opponent;
+        this.source = source;
+        this.opponentSource = opponentSource;
+        this.frame = new GameFrame();
+        this.opponentFrame = new GameFrame();
+        this.fps = fps;
+
+        //The panels are only used for their painting code here and are never added
+        //to the frame, so they need to be given their size by hand.
+        board.setSize(board.getPreferredSize());
+        side.setSize(side.getPreferredSize());
+        if (opponent != null) {
+            opponent.setSize(opponent.getPreferredSize());
+        }
+        setPreferredSize(new Dimension(getOpponentWidth() + board.getWidth() + side.getWidth(), board.getHeight()));
+        setBackground(Color.BLACK);
+
+        //We do all of the painting ourselves, and the frame keeps the keyboard focus.
+        setIgnoreRepaint(true);
+        setFocusable(false);
+    }
+
+    public void start() {
+        //Two buffers, page flipped if the platform supports it. This can only be set up
+        //once the canvas is displayable.
+        createBufferStrategy(2);
+        final Thread thread = new Thread(this, "Tetris Render");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        final BufferStrategy strategy = getBufferStrategy();
+        final long frameNanos = getFrameNanos();
+        long next = System.nanoTime();
+        while (true) {
+            drawFrame(strategy);
+
+            //In the capped mode, wait for the start of the next frame. If we've fallen
+            //behind, start the next frame right away instead of trying to catch up.
+            if (frameNanos > 0) {
+                next += frameNanos;
+                final long now = System.nanoTime();
+                if (next > now) {
+                    LockSupport.parkNanos(next - now);
+                } else {
+                    next = now;
+                }
+            }
+        }
+    }
+
+    private void drawFrame(final BufferStrategy strategy) {
+        //The contents of the buffers can be lost at any time (for example when the
+        //display mode changes), in which case the frame is simply drawn again.
+        do {
+            do {
+                final Graphics g = strategy.getDrawGraphics();
+                try {
+                    render(g);
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+    }
+
+    private void render(final Graphics g) {
+        source.read(frame);
+        final int x = getOpponentWidth();
+        if (opponent != null) {
+            opponentSource.read(opponentFrame);
+            final Graphics opponentGraphics = g.create(0, 0, x, opponent.getHeight());
+            opponent.paintFrame(opponentGraphics, opponentFrame);
+            opponentGraphics.dispose();
+        }
+        final Graphics boardGraphics = g.create(x, 0, board.getWidth(), board.getHeight());
+        board.paintFrame(boardGraphics, frame);
+        boardGraphics.dispose();
+        final Graphics sideGraphics = g.create(x + board.getWidth(), 0, side.getWidth(), side.getHeight());
+        side.paintFrame(sideGraphics, frame);
+        sideGraphics.dispose();
+    }
+
+    private int getOpponentWidth() {
+        return opponent == null ? 0 : opponent.getWidth();
+    }
+
+    private long getFrameNanos() {
+        //A negative frame rate means match the screen's refresh rate, zero means no cap.
+        int rate = fps;
+        if (rate < 0) {
+            final int refresh = getGraphicsConfiguration().getDevice().getDisplayMode().getRefreshRate();
+            rate = refresh == DisplayMode.REFRESH_RATE_UNKNOWN ? DEFAULT_FPS : refresh;
+        }
+        return rate == 0 ? 0 : 1000000000L / rate;
+    }
+}
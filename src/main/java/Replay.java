@@ -0,0 +1,380 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+public class Replay implements GameListener {
+
+    //"TRPL" in ASCII.
+    public static final int MAGIC = 0x5452504C;
+    //Version 2 added the checkpoints. Version 1 files can still be played, but a
+    //mismatch in them can only be found at the very end. Version 3 added the randomizer
+    //and the preview length; older games were all dealt by UNIFORM with one preview.
+    private static final int VERSION = 3;
+    //Every input is stored as a single varint holding the number of ticks since the
+    //previous input, shifted up by INPUT_BITS, with the input's ordinal in the low
+    //bits. Inputs that come less than 8 ticks apart take a single byte.
+    private static final int INPUT_BITS = 4;
+    private static final int INPUT_MASK = (1 << INPUT_BITS) - 1;
+    //A game with nobody touching it tops out long before this (about 22 minutes), so
+    //a replay that claims to go on for longer after its last input is cut off there.
+    private static final long MAX_IDLE_TICKS = 1 << 16;
+    private static final Input[] INPUTS = Input.values();
+    private static final Randomizer[] RANDOMIZERS = Randomizer.values();
+    private final long seed;
+    private final Randomizer randomizer;
+    private final int previewCount;
+    //The engine's tick when the recorded game started. Every tick in the replay counts
+    //from there, so it plays back from tick 0 of a new engine.
+    private final long startTick;
+    private final Varints events;
+    //A checkpoint is taken whenever the piece count changes, which is whenever a piece
+    //locks or a new game starts. Each one holds the ticks since the last checkpoint and
+    //the change in score, so a verifier can tell at which tick a replay went wrong.
+    private final Varints checkpoints;
+    private int eventCount;
+    private int checkpointCount;
+    private long lastTick;
+    private long checkpointTick;
+    private int checkpointScore;
+    private int checkpointPieces;
+    //The final state of the recorded game, which playback has to arrive at too.
+    private long ticks;
+    private int score;
+    private int lines;
+    //How far playback runs at most. Only less than ticks if the file claimed more
+    //ticks than the game could have had, in which case the replay can't match.
+    private long limit;
+    //The tick of the last event played back.
+    private long playedTick;
+
+    public Replay(final long seed, final Randomizer randomizer, final int previewCount) {
+        this(seed, randomizer, previewCount, 0);
+    }
+
+    public Replay(final long seed, final Randomizer randomizer, final int previewCount, final long startTick) {
+        this(seed, randomizer, previewCount, startTick, new Varints(new byte[256], 0), new Varints(new byte[64], 0));
+    }
+
+    private Replay(final long seed, final Randomizer randomizer, final int previewCount, final long startTick,
+            final Varints events, final Varints checkpoints) {
+        this.seed = seed;
+        this.randomizer = randomizer;
+        this.previewCount = previewCount;
+        this.startTick = startTick;
+        this.events = events;
+        this.checkpoints = checkpoints;
+        this.lastTick = startTick;
+        this.checkpointTick = startTick;
+    }
+
+    public void record(final long tick, final Input input) {
+        events.write((tick - lastTick) << INPUT_BITS | input.ordinal());
+        lastTick = tick;
+        eventCount++;
+    }
+
+    @Override
+    public void onEvents(final GameEngine engine, final GameEvents batch) {
+        //A recording listens to the engine it records, and only has to look at the
+        //game when a piece locks or a new game starts.
+        if (batch.contains(GameEvent.PIECE_LOCKED) || batch.contains(GameEvent.GAME_STARTED)) {
+            checkpoint(engine);
+        }
+    }
+
+    private void checkpoint(final GameEngine engine) {
+        if (engine.getPieces() == checkpointPieces) {
+            return;
+        }
+        checkpointPieces = engine.getPieces();
+        checkpoints.write(engine.getTick() - checkpointTick);
+        checkpoints.write(zigzag(engine.getScore() - checkpointScore));
+        checkpointTick = engine.getTick();
+        checkpointScore = engine.getScore();
+        checkpointCount++;
+    }
+
+    public void finish(final GameEngine engine) {
+        this.ticks = engine.getTick() - startTick;
+        this.limit = ticks;
+        this.score = engine.getScore();
+        this.lines = engine.getLines();
+    }
+
+    public void rewind() {
+        events.position = 0;
+        checkpoints.position = 0;
+        this.playedTick = 0;
+    }
+
+    public void applyInputs(final GameEngine engine) {
+        //Feed the engine every input that was recorded at its current tick, in the order
+        //they were recorded. The inputs were recorded before the tick ran, so this has to
+        //be called before the engine is stepped.
+        while (events.position < events.length) {
+            final int start = events.position;
+            final long value = events.read();
+            final long tick = playedTick + (value >>> INPUT_BITS);
+            if (tick != engine.getTick()) {
+                events.position = start;
+                return;
+            }
+            playedTick = tick;
+            engine.handleInput(INPUTS[(int) (value & INPUT_MASK)]);
+        }
+    }
+
+    public boolean isFinished(final GameEngine engine) {
+        //A lost game with no inputs left to start another one can't go anywhere either.
+        return engine.getTick() >= limit || engine.isGameOver() && events.position == events.length;
+    }
+
+    public boolean matches(final GameEngine engine) {
+        return engine.getTick() == ticks && engine.getScore() == score && engine.getLines() == lines;
+    }
+
+    public GameEngine play() {
+        //Runs the whole replay on a new engine, as fast as it will go.
+        final GameEngine engine = new GameEngine(seed, randomizer, previewCount);
+        rewind();
+        while (!isFinished(engine)) {
+            applyInputs(engine);
+            engine.step();
+        }
+        return engine;
+    }
+
+    public long findDivergence() {
+        //Plays the replay like play() does, checking every checkpoint along the way.
+        //Returns the first tick at which the game went differently from the recording,
+        //or -1 if it played out exactly the same.
+        final GameEngine engine = new GameEngine(seed, randomizer, previewCount);
+        rewind();
+        long expectedTick = 0;
+        int expectedScore = 0;
+        int pieces = 0;
+        while (!isFinished(engine)) {
+            applyInputs(engine);
+            engine.step();
+            //Version 1 replays have no checkpoints, so they can only be checked at the end.
+            if (checkpointCount == 0 || engine.getPieces() == pieces) {
+                continue;
+            }
+            pieces = engine.getPieces();
+            if (checkpoints.position == checkpoints.length) {
+                return engine.getTick();
+            }
+            expectedTick += checkpoints.read();
+            expectedScore += unzigzag(checkpoints.read());
+            if (expectedTick != engine.getTick() || expectedScore != engine.getScore()) {
+                return Math.min(expectedTick, engine.getTick());
+            }
+        }
+        if (checkpoints.position < checkpoints.length) {
+            return expectedTick + checkpoints.read();
+        }
+        return matches(engine) ? -1 : engine.getTick();
+    }
+
+    public void write(final OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeLong(seed);
+        data.writeByte(randomizer.ordinal());
+        data.writeByte(previewCount);
+        data.writeLong(ticks);
+        data.writeInt(score);
+        data.writeInt(lines);
+        data.writeInt(eventCount);
+        data.writeInt(events.length);
+        data.writeInt(checkpointCount);
+        data.writeInt(checkpoints.length);
+        data.write(events.bytes, 0, events.length);
+        data.write(checkpoints.bytes, 0, checkpoints.length);
+        data.flush();
+    }
+
+    public static Replay read(final InputStream in) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, read);
+        }
+        return read(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    public static Replay read(final ByteBuffer buffer) throws IOException {
+        //Reads one replay from the buffer's position on, and leaves the position right
+        //after it, so replays stored back to back can be read one after the other.
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a replay file");
+            }
+            final int version = buffer.get() & 0xFF;
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported replay version: " + version);
+            }
+            final long seed = buffer.getLong();
+            final int randomizer = version < 3 ? Randomizer.UNIFORM.ordinal() : buffer.get() & 0xFF;
+            final int previewCount = version < 3 ? 1 : buffer.get() & 0xFF;
+            final long ticks = buffer.getLong();
+            final int score = buffer.getInt();
+            final int lines = buffer.getInt();
+            final int eventCount = buffer.getInt();
+            final int eventLength = buffer.getInt();
+            final int checkpointCount = version == 1 ? 0 : buffer.getInt();
+            final int checkpointLength = version == 1 ? 0 : buffer.getInt();
+            //The lengths are checked against what's actually left before anything is
+            //allocated for them, since they may come from a forged file.
+            if (eventLength < 0 || checkpointLength < 0 || randomizer >= RANDOMIZERS.length || previewCount < 1
+                    || previewCount > GameEngine.MAX_PREVIEW || eventLength > buffer.remaining()
+                    || checkpointLength > buffer.remaining() - eventLength) {
+                throw new IOException("Corrupt replay");
+            }
+            final byte[] eventBytes = new byte[eventLength];
+            final byte[] checkpointBytes = new byte[checkpointLength];
+            buffer.get(eventBytes);
+            buffer.get(checkpointBytes);
+
+            final Replay replay = new Replay(seed, RANDOMIZERS[randomizer], previewCount, 0,
+                    new Varints(eventBytes, eventLength),
+                    new Varints(checkpointBytes, checkpointLength));
+            replay.ticks = ticks;
+            replay.limit = Math.min(ticks, replay.getLastEventTick() + MAX_IDLE_TICKS);
+            replay.score = score;
+            replay.lines = lines;
+            replay.eventCount = eventCount;
+            replay.checkpointCount = checkpointCount;
+            return replay;
+        } catch (final BufferUnderflowException e) {
+            throw new IOException("Truncated replay", e);
+        }
+    }
+
+    public static void skip(final ByteBuffer buffer) throws IOException {
+        //Moves the buffer's position past one replay, like read() does, but only reads
+        //and checks its header. The inputs and checkpoints are left undecoded.
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a replay file");
+            }
+            final int version = buffer.get() & 0xFF;
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported replay version: " + version);
+            }
+            buffer.getLong();
+            final int randomizer = version < 3 ? Randomizer.UNIFORM.ordinal() : buffer.get() & 0xFF;
+            final int previewCount = version < 3 ? 1 : buffer.get() & 0xFF;
+            //The ticks, score, lines and event count.
+            buffer.getLong();
+            buffer.getInt();
+            buffer.getInt();
+            buffer.getInt();
+            final int eventLength = buffer.getInt();
+            if (version > 1) {
+                buffer.getInt();
+            }
+            final int checkpointLength = version == 1 ? 0 : buffer.getInt();
+            if (eventLength < 0 || checkpointLength < 0 || randomizer >= RANDOMIZERS.length || previewCount < 1
+                    || previewCount > GameEngine.MAX_PREVIEW || eventLength > buffer.remaining()
+                    || checkpointLength > buffer.remaining() - eventLength) {
+                throw new IOException("Corrupt replay");
+            }
+            buffer.position(buffer.position() + eventLength + checkpointLength);
+        } catch (final BufferUnderflowException e) {
+            throw new IOException("Truncated replay", e);
+        }
+    }
+
+    private long getLastEventTick() throws IOException {
+        long tick = 0;
+        try {
+            while (events.position < events.length) {
+                tick += events.read() >>> INPUT_BITS;
+            }
+        } catch (final ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupt replay", e);
+        }
+        events.position = 0;
+        return tick;
+    }
+
+    private static long zigzag(final long value) {
+        //Scores drop back to zero when a new game starts, so the changes are stored
+        //zigzag encoded, which keeps small negative numbers small too.
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int unzigzag(final long value) {
+        return (int) ((value >>> 1) ^ -(value & 1));
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public Randomizer getRandomizer() {
+        return randomizer;
+    }
+
+    public int getPreviewCount() {
+        return previewCount;
+    }
+
+    public long getPlaybackLimit() {
+        return limit;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getLines() {
+        return lines;
+    }
+
+    private static class Varints {
+
+        private byte[] bytes;
+        private int length;
+        private int position;
+
+        private Varints(final byte[] bytes, final int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        private void write(long value) {
+            //Seven bits per byte, lowest first, with the top bit set on every byte but
+            //the last.
+            if (length + 10 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) (value | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private long read() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+public class ReplayVerifier {
+
+    //The number of replays a single fork-join leaf verifies sequentially.
+    private static final int REPLAYS_PER_TASK = 64;
+    //Archives are mapped in windows of at most this size, since a single mapping
+    //can't be larger than 2GB. A window always starts at the start of a replay.
+    private static final long WINDOW_SIZE = 1L << 30;
+    private final List<ByteBuffer> windows = new ArrayList<>();
+    //For every replay, the window it's in and where in the window it starts.
+    private int[] replayWindows = new int[1024];
+    private int[] replayOffsets = new int[1024];
+    private long[] replayPositions = new long[1024];
+    private int replayCount;
+
+    public void add(final Path archive) throws IOException {
+        //Map the archive and walk it once to find where every replay starts. Only the
+        //replay headers are read here, and each replay is skipped by the lengths in its
+        //header. The replays are only decoded when they're played, later and in
+        //parallel. A replay that can't be read is still counted, so it shows up as a
+        //mismatch, and the walk carries on from the next thing that looks like the start
+        //of a replay.
+        try (final FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            long position = 0;
+            boolean isDamaged = false;
+            while (position < size) {
+                final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(WINDOW_SIZE, size - position));
+                windows.add(window);
+                final boolean isLast = position + window.limit() == size;
+                int end = 0;
+                while (end < window.limit()) {
+                    if (isDamaged) {
+                        if (window.limit() - end < 4) {
+                            //Whatever is left is too short to be a replay, or the
+                            //search goes on in the next window.
+                            end = isLast ? window.limit() : end;
+                            break;
+                        }
+                        if (window.getInt(end) != Replay.MAGIC) {
+                            end++;
+                            continue;
+                        }
+                        isDamaged = false;
+                    }
+                    window.position(end);
+                    try {
+                        Replay.skip(window);
+                    } catch (final IOException e) {
+                        if (!isLast && end > 0) {
+                            //It may only be cut off by the end of the window, so it's
+                            //read again from the start of the next one.
+                            break;
+                        }
+                        addReplay(windows.size() - 1, end, position + end);
+                        isDamaged = true;
+                        end++;
+                        continue;
+                    }
+                    addReplay(windows.size() - 1, end, position + end);
+                    end = window.position();
+                }
+                position += end;
+            }
+        }
+    }
+
+    private void addReplay(final int window, final int offset, final long position) {
+        if (replayCount == replayWindows.length) {
+            replayWindows = Arrays.copyOf(replayWindows, replayCount * 2);
+            replayOffsets = Arrays.copyOf(replayOffsets, replayCount * 2);
+            replayPositions = Arrays.copyOf(replayPositions, replayCount * 2);
+        }
+        replayWindows[replayCount] = window;
+        replayOffsets[replayCount] = offset;
+        replayPositions[replayCount] = position;
+        replayCount++;
+    }
+
+    public int getReplayCount() {
+        return replayCount;
+    }
+
+    public Result run(final ForkJoinPool pool) {
+        return pool.invoke(new VerifyTask(0, replayCount));
+    }
+
+    private void verify(final int index, final Result result) {
+        //Every task reads through a view of its own, since a buffer's position isn't
+        //safe to share between threads.
+        final ByteBuffer buffer = windows.get(replayWindows[index]).duplicate();
+        buffer.position(replayOffsets[index]);
+        long divergence;
+        Replay replay = null;
+        try {
+            replay = Replay.read(buffer);
+            divergence = replay.findDivergence();
+        } catch (final IOException | RuntimeException e) {
+            //A replay so damaged it can't even be played is as wrong as it gets.
+            divergence = 0;
+        }
+        result.ticks += replay == null ? 0 : replay.getPlaybackLimit();
+        if (divergence >= 0) {
+            result.addMismatch(index, replayPositions[index], replay == null ? 0 : replay.getSeed(), divergence);
+        }
+    }
+
+    private class VerifyTask extends RecursiveTask<Result> {
+
+        private final int from;
+        private final int to;
+
+        private VerifyTask(final int from, final int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from <= REPLAYS_PER_TASK) {
+                final Result result = new Result();
+                for (int index = from; index < to; index++) {
+                    verify(index, result);
+                }
+                return result;
+            }
+            final int middle = (from + to) >>> 1;
+            final VerifyTask left = new VerifyTask(from, middle);
+            left.fork();
+            final Result result = new VerifyTask(middle, to).compute();
+            result.merge(left.join());
+            return result;
+        }
+    }
+
+    public static class Result {
+
+        private final List<long[]> mismatches = new ArrayList<>();
+        private long ticks;
+
+        private void addMismatch(final int index, final long position, final long seed, final long tick) {
+            mismatches.add(new long[] {index, position, seed, tick});
+        }
+
+        private void merge(final Result other) {
+            mismatches.addAll(other.mismatches);
+            ticks += other.ticks;
+        }
+
+        public int getMismatchCount() {
+            return mismatches.size();
+        }
+
+        public void print() {
+            mismatches.sort((a, b) -> Long.compare(a[0], b[0]));
+            for (final long[] mismatch : mismatches) {
+                System.out.printf(Locale.ROOT, "replay %d (byte %d, seed %d) diverges at tick %d%n",
+                        mismatch[0], mismatch[1], mismatch[2], mismatch[3]);
+            }
+        }
+    }
+
+    public static void main(final String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        final ReplayVerifier verifier = new ReplayVerifier();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                verifier.add(Paths.get(args[i]));
+            }
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        final long start = System.nanoTime();
+        final Result result = verifier.run(pool);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        result.print();
+        System.out.printf(Locale.ROOT, "%d replays, %d mismatches, on %d threads in %.2f s (%.0f replays/s, %.0f ticks/s)%n",
+                verifier.getReplayCount(), result.getMismatchCount(), threads, seconds,
+                verifier.getReplayCount() / seconds, result.ticks / seconds);
+        if (result.getMismatchCount() > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+public class Rng {
+
+    //The same linear congruential generator as java.util.Random, step for step, so a
+    //seed still deals the same pieces it always has (and old replays still play). The
+    //difference is that the 48 bit state can be read and restored, which Random hides.
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+    public static final int STATE_BITS = 48;
+    private long state;
+
+    public Rng(final long seed) {
+        this.state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    private int next(final int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    public int nextInt(final int bound) {
+        //Exactly Random.nextInt(int), including the rejection of the values that would
+        //make some results more likely than others.
+        int r = next(31);
+        final int m = bound - 1;
+        if ((bound & m) == 0) {
+            r = (int) ((bound * (long) r) >> 31);
+        } else {
+            for (int u = r; u - (r = u % bound) + m < 0; u = next(31)) {
+                //Keep drawing until the value falls in an unbiased range.
+            }
+        }
+        return r;
+    }
+
+    public long getSeed() {
+        //The seed that makes a new Rng start out exactly where this one is now.
+        return (state ^ MULTIPLIER) & MASK;
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public void setState(final long state) {
+        this.state = state & MASK;
+    }
+}
@@ -0,0 +1,20 @@
+public class SharedFrame {
+
+    //Hands the latest GameFrame from the game loop to whichever thread paints. Both
+    //sides only hold the lock for as long as a copy takes, so the game loop never waits
+    //on a paint, and a painter never sees a frame that's only partly written.
+    private final GameFrame latest;
+
+    public SharedFrame() {
+        this.latest = new GameFrame();
+    }
+
+    public synchronized void publish(final GameEngine engine) {
+        //Called by the game loop, between ticks.
+        latest.copyFrom(engine);
+    }
+
+    public synchronized void read(final GameFrame target) {
+        target.copyFrom(latest);
+    }
+}
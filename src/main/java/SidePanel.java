@@ -2,7 +2,7 @@ import javax.swing.*;
 import java.awt.*;
 
 
-public class SidePanel extends JPanel {
+public class SidePanel extends JPanel implements GameListener {
 
     private static final int TILE_SIZE = BoardPanel.TILE_SIZE >> 1;
     private static final int SHADE_WIDTH = BoardPanel.SHADE_WIDTH >> 1;
@@ -10,27 +10,165 @@ public class SidePanel extends JPanel {
     private static final int SQUARE_CENTER_X = 130;
     private static final int SQUARE_CENTER_Y = 65;
     private static final int SQUARE_SIZE = (TILE_SIZE * TILE_COUNT >> 1);
+    //The pieces after the next one are drawn at half size in a strip down the right
+    //edge, starting level with the top of the preview box.
+    private static final int STRIP_TILE_SIZE = TILE_SIZE >> 1;
+    private static final int STRIP_SHADE_WIDTH = SHADE_WIDTH >> 1;
+    private static final int STRIP_CENTER_X = 185;
+    private static final int STRIP_TOP = SQUARE_CENTER_Y - SQUARE_SIZE;
+    private static final int STRIP_STRIDE = STRIP_TILE_SIZE * 3;
     private static final int SMALL_INSET = 20;
     private static final int LARGE_INSET = 40;
     private static final int STATS_INSET = 175;
-    private static final int CONTROLS_INSET = 300;
+    private static final int CONTROLS_INSET = 275;
     private static final int TEXT_STRIDE = 25;
+    //The list of controls is set closer together, so that all of it fits above the
+    //bottom of the panel.
+    private static final int CONTROLS_STRIDE = 18;
     private static final Font SMALL_FONT = new Font("Tahoma", Font.BOLD, 11);
     private static final Font LARGE_FONT = new Font("Tahoma", Font.BOLD, 13);
     private static final Color DRAW_COLOR = new Color(128, 192, 128);
-    private final Tetris tetris;
-
-    public SidePanel(final Tetris tetris) {
-        this.tetris = tetris;
+    private final GameEngine engine;
+    //What the Swing painting works from, like the BoardPanel's.
+    private final SharedFrame source;
+    private final GameFrame frame;
+    private final TileSprites sprites;
+    private final TileSprites stripSprites;
+    private final StaticLayer labelLayer;
+    private final TextGlyphs digits;
+    private PerfStats stats;
+    private HighScores scores;
+    //Where the level, score and record numbers go, right after their labels. Measured
+    //when the label layer is painted.
+    private int levelX;
+    private int scoreX;
+    private int recordX;
+    //Set when the engine reports a change to anything this panel shows. The record is
+    //the only thing that can change without the engine knowing, so refresh() keeps the
+    //one that was last shown to compare against.
+    private boolean isChanged = true;
+    private int paintedRecord = -1;
+
+    public SidePanel(final GameEngine engine, final SharedFrame source) {
+        this.engine = engine;
+        this.source = source;
+        this.frame = new GameFrame();
+        this.sprites = TileSprites.forSize(TILE_SIZE, SHADE_WIDTH);
+        this.stripSprites = TileSprites.forSize(STRIP_TILE_SIZE, STRIP_SHADE_WIDTH);
+        this.labelLayer = new StaticLayer(this::paintLabels);
+        this.digits = new TextGlyphs(SMALL_FONT, DRAW_COLOR);
 
         setPreferredSize(new Dimension(200, BoardPanel.PANEL_HEIGHT));
         setBackground(Color.BLACK);
     }
 
+    public void setStats(final PerfStats stats) {
+        this.stats = stats;
+    }
+
+    public void setHighScores(final HighScores scores) {
+        this.scores = scores;
+    }
+
+    private int getRecord(final int score) {
+        //The best score on record, or the current one once the player has beaten it.
+        //-1 if there are no high scores to show.
+        if (scores == null) {
+            return -1;
+        }
+        final HighScores.Entry best = scores.getBest();
+        return Math.max(best != null ? best.getScore() : 0, score);
+    }
+
+    @Override
+    public void onEvents(final GameEngine engine, final GameEvents events) {
+        //The level, the score and the preview only change with these.
+        isChanged |= events.contains(GameEvent.SCORE_CHANGED) || events.contains(GameEvent.LEVEL_CHANGED)
+                || events.contains(GameEvent.PIECE_SPAWNED) || events.contains(GameEvent.GAME_OVER)
+                || events.contains(GameEvent.GAME_STARTED);
+    }
+
+    public void refresh() {
+        //Only repaint when something this panel shows has actually changed.
+        final int record = getRecord(engine.getScore());
+        if (isChanged || record != paintedRecord) {
+            isChanged = false;
+            paintedRecord = record;
+            repaint();
+        }
+    }
+
     @Override
     public void paintComponent(final Graphics g) {
-        super.paintComponent(g);
+        source.read(frame);
+        paintFrame(g, frame);
+    }
+
+    public void paintFrame(final Graphics g, final GameFrame frame) {
+        final long start = System.nanoTime();
+        //Clear to the background ourselves. JComponent's paintComponent paints through
+        //a copy of the Graphics, which would be a new object on every frame.
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+
+        //All of the text except for the numbers, and the preview box, never change.
+        labelLayer.draw(g, this, getWidth(), getHeight());
+
+        //The numbers are drawn from cached digits, so painting them allocates nothing.
+        digits.draw(g, frame.getLevel(), levelX, STATS_INSET + TEXT_STRIDE);
+        digits.draw(g, frame.getScore(), scoreX, STATS_INSET + TEXT_STRIDE * 2);
+        final int record = getRecord(frame.getScore());
+        if (record >= 0) {
+            digits.draw(g, record, recordX, STATS_INSET + TEXT_STRIDE * 3);
+        }
+
+        //Draw a preview of the next piece that will be spawned, and of the ones after it
+        //in the strip.
+        if (!frame.isGameOver()) {
+            final TileType type = frame.getNextPieceType();
+            if (type != null) {
+                drawPiece(g, sprites, TILE_SIZE, type, SQUARE_CENTER_X, SQUARE_CENTER_Y);
+            }
+            for (int i = 1; i < frame.getPreviewCount(); i++) {
+                final TileType upcoming = frame.getPreviewType(i);
+                if (upcoming != null) {
+                    drawPiece(g, stripSprites, STRIP_TILE_SIZE, upcoming, STRIP_CENTER_X,
+                            STRIP_TOP + (i - 1) * STRIP_STRIDE + STRIP_STRIDE / 2);
+                }
+            }
+        }
+
+        if (stats != null) {
+            stats.recordSidePaint(System.nanoTime() - start);
+        }
+    }
+
+    private static void drawPiece(final Graphics g, final TileSprites sprites, final int tileSize,
+            final TileType type, final int centerX, final int centerY) {
+        //The code is pretty much identical to the drawing code on the board, just
+        //smaller and centered, rather than constrained to a grid.
+        //Get the size properties of the current piece.
+        final int cols = type.getCols();
+        final int rows = type.getRows();
+
+        //Calculate the top left corner (origin) of the piece.
+        final int startX = (centerX - (cols * tileSize / 2));
+        final int startY = (centerY - (rows * tileSize / 2));
+
+        //Get the insets for the preview. The default
+        //rotation is used for the preview, so we just use 0.
+        final int top = type.getTopInset(0);
+        final int left = type.getLeftInset(0);
+
+        //Loop through the piece and draw its tiles onto the preview.
+        for (int cell = 0; cell < type.getCellCount(0); cell++) {
+            final int col = type.getCellX(0, cell);
+            final int row = type.getCellY(0, cell);
+            sprites.draw(g, type, startX + ((col - left) * tileSize), startY + ((row - top) * tileSize));
+        }
+    }
 
+    private void paintLabels(final Graphics2D g, final int width, final int height) {
         //Set the color for drawing.
         g.setColor(DRAW_COLOR);
 
@@ -42,70 +180,35 @@ public class SidePanel extends JPanel {
         g.setFont(LARGE_FONT);
         g.drawString("Statisztikák", SMALL_INSET, offset = STATS_INSET);
         g.setFont(SMALL_FONT);
-        g.drawString("Szint: " + tetris.getLevel(), LARGE_INSET, offset += TEXT_STRIDE);
-        g.drawString("Pont: " + tetris.getScore(), LARGE_INSET, offset += TEXT_STRIDE);
+        final String level = "Szint: ";
+        final String score = "Pont: ";
+        final String record = "Rekord: ";
+        g.drawString(level, LARGE_INSET, offset += TEXT_STRIDE);
+        g.drawString(score, LARGE_INSET, offset += TEXT_STRIDE);
+        if (scores != null) {
+            g.drawString(record, LARGE_INSET, offset += TEXT_STRIDE);
+        }
+        levelX = LARGE_INSET + g.getFontMetrics().stringWidth(level);
+        scoreX = LARGE_INSET + g.getFontMetrics().stringWidth(score);
+        recordX = LARGE_INSET + g.getFontMetrics().stringWidth(record);
 
         g.setFont(LARGE_FONT);
         g.drawString("Billentyűzet", SMALL_INSET, offset = CONTROLS_INSET);
         g.setFont(SMALL_FONT);
-        g.drawString("A - Mozdulás jobbra", LARGE_INSET, offset += TEXT_STRIDE);
-        g.drawString("D - Mozdulás balra", LARGE_INSET, offset += TEXT_STRIDE);
-        g.drawString("Q - Fordulás jobbra", LARGE_INSET, offset += TEXT_STRIDE);
-        g.drawString("E - Fordulás balra", LARGE_INSET, offset += TEXT_STRIDE);
-        g.drawString("S - Esés", LARGE_INSET, offset += TEXT_STRIDE);
-        g.drawString("P - Szünet", LARGE_INSET, offset += TEXT_STRIDE);
+        g.drawString("A - Mozdulás jobbra", LARGE_INSET, offset += CONTROLS_STRIDE);
+        g.drawString("D - Mozdulás balra", LARGE_INSET, offset += CONTROLS_STRIDE);
+        g.drawString("Q - Fordulás jobbra", LARGE_INSET, offset += CONTROLS_STRIDE);
+        g.drawString("E - Fordulás balra", LARGE_INSET, offset += CONTROLS_STRIDE);
+        g.drawString("S - Esés", LARGE_INSET, offset += CONTROLS_STRIDE);
+        g.drawString("W - Ledobás", LARGE_INSET, offset += CONTROLS_STRIDE);
+        g.drawString("P - Szünet", LARGE_INSET, offset += CONTROLS_STRIDE);
+        g.drawString("I - Gépi játékos", LARGE_INSET, offset += CONTROLS_STRIDE);
+        g.drawString("M - Némítás", LARGE_INSET, offset += CONTROLS_STRIDE);
+        g.drawString("+/- - Hangerő", LARGE_INSET, offset += CONTROLS_STRIDE);
+        g.drawString("F3 - Teljesítmény", LARGE_INSET, offset += CONTROLS_STRIDE);
 
         g.setFont(LARGE_FONT);
         g.drawString("Következő:", SMALL_INSET, 70);
         g.drawRect(SQUARE_CENTER_X - SQUARE_SIZE, SQUARE_CENTER_Y - SQUARE_SIZE, SQUARE_SIZE * 2, SQUARE_SIZE * 2);
-
-        //Draw a preview of the next piece that will be spawned. The code is pretty much
-        //identical to the drawing code on the board, just smaller and centered, rather
-        //than constrained to a grid.
-        final TileType type = tetris.getNextPieceType();
-        if (!tetris.isGameOver() && type != null) {
-            //Get the size properties of the current piece.
-            final int cols = type.getCols();
-            final int rows = type.getRows();
-            final int dimension = type.getDimension();
-
-            //Calculate the top left corner (origin) of the piece.
-            final int startX = (SQUARE_CENTER_X - (cols * TILE_SIZE / 2));
-            final int startY = (SQUARE_CENTER_Y - (rows * TILE_SIZE / 2));
-
-            //Get the insets for the preview. The default
-            //rotation is used for the preview, so we just use 0.
-            final int top = type.getTopInset(0);
-            final int left = type.getLeftInset(0);
-
-            //Loop through the piece and draw its tiles onto the preview.
-            for (int row = 0; row < dimension; row++) {
-                for (int col = 0; col < dimension; col++) {
-                    if (type.isTile(col, row, 0)) {
-                        drawTile(type, startX + ((col - left) * TILE_SIZE), startY + ((row - top) * TILE_SIZE), g);
-                    }
-                }
-            }
-        }
-    }
-
-    private void drawTile(final TileType type, final int x, final int y, final Graphics g) {
-        //Fill the entire tile with the base color.
-        g.setColor(type.getBaseColor());
-        g.fillRect(x, y, TILE_SIZE, TILE_SIZE);
-
-        //Fill the bottom and right edges of the tile with the dark shading color.
-        g.setColor(type.getDarkColor());
-        g.fillRect(x, y + TILE_SIZE - SHADE_WIDTH, TILE_SIZE, SHADE_WIDTH);
-        g.fillRect(x + TILE_SIZE - SHADE_WIDTH, y, SHADE_WIDTH, TILE_SIZE);
-
-        //Fill the top and left edges with the light shading. We draw a single line
-        //for each row or column rather than a rectangle so that we can draw a nice
-        //looking diagonal where the light and dark shading meet.
-        g.setColor(type.getLightColor());
-        for (int i = 0; i < SHADE_WIDTH; i++) {
-            g.drawLine(x, y + i, x + TILE_SIZE - i - 1, y + i);
-            g.drawLine(x + i, y, x + i, y + TILE_SIZE - i - 1);
-        }
     }
 }
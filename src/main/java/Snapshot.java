@@ -0,0 +1,126 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+
+public class Snapshot {
+
+    //"TSNP" in ASCII.
+    private static final int MAGIC = 0x54534E50;
+    //Version 2 widened the board's cells to four bits to fit garbage, and version 3
+    //replaced the next piece with the randomizer and the queue of upcoming pieces.
+    private static final int VERSION = 3;
+    //A snapshot is a stream of bit fields, each just as wide as the value needs. With
+    //the header and checksum, a saved game comes to 192 to 197 bytes, depending on the
+    //randomizer and how many pieces are previewed.
+    private byte[] bytes;
+    private int bitLength;
+    private int bitPosition;
+
+    public Snapshot() {
+        this.bytes = new byte[256];
+    }
+
+    private Snapshot(final byte[] bytes, final int bitLength) {
+        this.bytes = bytes;
+        this.bitLength = bitLength;
+    }
+
+    public void write(final long value, final int bits) {
+        if ((bitLength + bits + 7) >> 3 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        for (int i = bits - 1; i >= 0; i--) {
+            if ((value >>> i & 1) != 0) {
+                bytes[bitLength >> 3] |= 0x80 >>> (bitLength & 7);
+            }
+            bitLength++;
+        }
+    }
+
+    public void writeBoolean(final boolean value) {
+        write(value ? 1 : 0, 1);
+    }
+
+    public long read(final int bits) throws IOException {
+        if (bitPosition + bits > bitLength) {
+            throw new IOException("Truncated snapshot");
+        }
+        long value = 0;
+        for (int i = 0; i < bits; i++) {
+            value = value << 1 | (bytes[bitPosition >> 3] >>> (7 - (bitPosition & 7)) & 1);
+            bitPosition++;
+        }
+        return value;
+    }
+
+    public int readInt(final int bits) throws IOException {
+        return (int) read(bits);
+    }
+
+    public boolean readBoolean() throws IOException {
+        return read(1) != 0;
+    }
+
+    public void rewind() {
+        //Start reading from the beginning again, so the same snapshot can be loaded more
+        //than once.
+        this.bitPosition = 0;
+    }
+
+    public byte[] toBytes() throws IOException {
+        //The header, then the packed bits, with a checksum so a torn or damaged file is
+        //never mistaken for a saved game.
+        final int length = (bitLength + 7) >> 3;
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(length + 16);
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeInt(bitLength);
+        data.writeInt((int) crc.getValue());
+        data.write(bytes, 0, length);
+        return out.toByteArray();
+    }
+
+    public static Snapshot fromBytes(final byte[] file) throws IOException {
+        final DataInputStream data = new DataInputStream(new ByteArrayInputStream(file));
+        if (file.length < 13 || data.readInt() != MAGIC) {
+            throw new IOException("Not a snapshot file");
+        }
+        final int version = data.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version: " + version);
+        }
+        final int bitLength = data.readInt();
+        final int checksum = data.readInt();
+        final int length = (bitLength + 7) >> 3;
+        if (bitLength < 0 || length != file.length - 13) {
+            throw new IOException("Truncated snapshot");
+        }
+        final byte[] bytes = Arrays.copyOfRange(file, 13, file.length);
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Corrupt snapshot");
+        }
+        return new Snapshot(bytes, bitLength);
+    }
+
+    public static Snapshot read(final Path path) throws IOException {
+        //Returns null if there's no snapshot to read.
+        try {
+            return fromBytes(Files.readAllBytes(path));
+        } catch (final NoSuchFileException e) {
+            return null;
+        }
+    }
+}
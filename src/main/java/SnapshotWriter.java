@@ -0,0 +1,52 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+
+public class SnapshotWriter implements Runnable {
+
+    private final Path path;
+    //Only the newest snapshot matters. If the game saves again before the last one was
+    //written, the older one is simply skipped.
+    private final AtomicReference<byte[]> pending;
+    private final Thread thread;
+
+    public SnapshotWriter(final Path path) {
+        this.path = path;
+        this.pending = new AtomicReference<>();
+        this.thread = new Thread(this, "Tetris Snapshot");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void save(final GameEngine engine) {
+        //Packing the state takes microseconds, so it's done right here where the state
+        //can't change under us. Writing the file is left to the writer's own thread.
+        final Snapshot snapshot = new Snapshot();
+        engine.save(snapshot);
+        try {
+            pending.set(snapshot.toBytes());
+        } catch (final IOException e) {
+            System.err.println("Could not save the game: " + e);
+            return;
+        }
+        LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            final byte[] file = pending.getAndSet(null);
+            if (file == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            try {
+                AtomicFiles.write(file, path);
+            } catch (final IOException e) {
+                System.err.println("Could not save the game: " + e);
+            }
+        }
+    }
+}
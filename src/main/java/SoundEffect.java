@@ -0,0 +1,35 @@
+public enum SoundEffect {
+
+    //There are no sound files for the effects, so each one is synthesized into a
+    //buffer of samples once, when the class is loaded. Every effect is a tone that
+    //slides from one frequency to another while it fades out.
+    ROTATE(880.0, 1320.0, 40, true),
+    LOCK(160.0, 80.0, 70, false),
+    LINE_CLEAR(440.0, 1320.0, 250, true),
+    GAME_OVER(440.0, 110.0, 700, true);
+
+    public static final float SAMPLE_RATE = 44100f;
+    private static final double AMPLITUDE = 0.35 * Short.MAX_VALUE;
+    //16 bit little endian stereo samples, the same format the mixer outputs.
+    private final byte[] samples;
+
+    SoundEffect(final double fromHz, final double toHz, final int millis, final boolean isSquare) {
+        final int frames = (int) (SAMPLE_RATE * millis / 1000);
+        this.samples = new byte[frames * 4];
+        double phase = 0.0;
+        for (int i = 0; i < frames; i++) {
+            final double t = (double) i / frames;
+            phase += 2.0 * Math.PI * (fromHz + (toHz - fromHz) * t) / SAMPLE_RATE;
+            final double wave = isSquare ? Math.signum(Math.sin(phase)) * 0.5 : Math.sin(phase);
+            final short sample = (short) (wave * AMPLITUDE * (1.0 - t) * (1.0 - t));
+            for (int channel = 0; channel < 2; channel++) {
+                samples[i * 4 + channel * 2] = (byte) sample;
+                samples[i * 4 + channel * 2 + 1] = (byte) (sample >> 8);
+            }
+        }
+    }
+
+    public byte[] getSamples() {
+        return samples;
+    }
+}
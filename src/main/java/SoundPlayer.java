@@ -0,0 +1,5 @@
+public interface SoundPlayer {
+
+    //Called from the game loop, so this must return right away.
+    void play(SoundEffect effect);
+}
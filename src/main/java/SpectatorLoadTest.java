@@ -0,0 +1,208 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Locale;
+
+
+public class SpectatorLoadTest {
+
+    //Opens many spectator connections to a broadcasting game from a single thread, and
+    //decodes every stream into a SpectatorView of its own, to see how the server copes.
+    //Slow clients read only SLOW_READ bytes a second through a small receive buffer, so
+    //the server has to skip them ahead.
+    private static final int BUFFER_SIZE = 1 << 14;
+    private static final int SLOW_READ = 512;
+    private static final int SLOW_RECEIVE_BUFFER = 4096;
+    private final Client[] clients;
+    private final Selector selector;
+    private int connected;
+    private int failed;
+
+    private static class Client {
+
+        private final SocketChannel channel;
+        private final boolean isSlow;
+        private final ByteBuffer buffer;
+        private final SpectatorView view;
+        private long bytes;
+        private long records;
+        private long keyframes;
+        private boolean isFailed;
+
+        private Client(final SocketChannel channel, final boolean isSlow) {
+            this.channel = channel;
+            this.isSlow = isSlow;
+            this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            this.view = new SpectatorView();
+        }
+    }
+
+    public SpectatorLoadTest(final InetSocketAddress address, final int count, final int slow) throws IOException {
+        this.selector = Selector.open();
+        this.clients = new Client[count];
+        for (int i = 0; i < count; i++) {
+            final SocketChannel channel = SocketChannel.open();
+            final boolean isSlow = i < slow;
+            if (isSlow) {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, SLOW_RECEIVE_BUFFER);
+            }
+            channel.configureBlocking(false);
+            channel.connect(address);
+            clients[i] = new Client(channel, isSlow);
+            channel.register(selector, SelectionKey.OP_CONNECT, clients[i]);
+        }
+    }
+
+    public void run(final long nanos) throws IOException {
+        final long end = System.nanoTime() + nanos;
+        long nextSlowRead = System.nanoTime();
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            selector.select(Math.max(1, Math.min(end - now, nextSlowRead - now) / 1000000L));
+            final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                final SelectionKey key = keys.next();
+                keys.remove();
+                final Client client = (Client) key.attachment();
+                try {
+                    if (key.isConnectable()) {
+                        if (client.channel.finishConnect()) {
+                            connected++;
+                            key.interestOps(client.isSlow ? 0 : SelectionKey.OP_READ);
+                        }
+                    } else if (key.isReadable()) {
+                        read(client, BUFFER_SIZE);
+                    }
+                } catch (final IOException | RuntimeException e) {
+                    fail(client);
+                }
+            }
+
+            //The slow clients aren't registered for reading at all, and only take a
+            //little of what's waiting for them once a second.
+            if (System.nanoTime() >= nextSlowRead) {
+                nextSlowRead += 1000000000L;
+                for (final Client client : clients) {
+                    if (client.isSlow && !client.isFailed && client.channel.isConnected()) {
+                        try {
+                            read(client, SLOW_READ);
+                        } catch (final IOException | RuntimeException e) {
+                            fail(client);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void read(final Client client, final int limit) throws IOException {
+        final ByteBuffer buffer = client.buffer;
+        buffer.limit(Math.min(buffer.capacity(), buffer.position() + limit));
+        final int count = client.channel.read(buffer);
+        if (count < 0) {
+            throw new IOException("Closed by the server");
+        }
+        client.bytes += count;
+
+        //Apply every complete record. A partial one waits for the rest of its bytes.
+        buffer.flip();
+        while (buffer.remaining() >= 2) {
+            final int length = buffer.getShort(buffer.position()) & 0xFFFF;
+            if (buffer.remaining() < 2 + length) {
+                break;
+            }
+            buffer.position(buffer.position() + 2);
+            if (buffer.get(buffer.position()) == SpectatorView.KEYFRAME) {
+                client.keyframes++;
+            }
+            client.view.applyRecord(buffer, length);
+            client.records++;
+        }
+        buffer.compact();
+    }
+
+    private void fail(final Client client) {
+        client.isFailed = true;
+        failed++;
+        try {
+            client.channel.close();
+        } catch (final IOException e) {
+            //It's gone either way.
+        }
+    }
+
+    public void print(final double seconds) {
+        //How far behind the newest tick any client has seen each client is, in ticks.
+        long latest = 0;
+        for (final Client client : clients) {
+            latest = Math.max(latest, client.view.getTick());
+        }
+        final Histogram fastLag = new Histogram();
+        final Histogram slowLag = new Histogram();
+        long bytes = 0;
+        long records = 0;
+        long keyframes = 0;
+        for (final Client client : clients) {
+            bytes += client.bytes;
+            records += client.records;
+            keyframes += client.keyframes;
+            if (!client.isFailed && client.view.hasKeyframe()) {
+                (client.isSlow ? slowLag : fastLag).record(latest - client.view.getTick());
+            }
+        }
+        System.out.printf(Locale.ROOT, "%d of %d clients connected, %d failed, in %.1f s%n", connected,
+                clients.length, failed, seconds);
+        System.out.printf(Locale.ROOT, "%d bytes (%.0f/s), %d records, %d keyframes%n", bytes, bytes / seconds,
+                records, keyframes);
+        print("fast", fastLag);
+        print("slow", slowLag);
+    }
+
+    private static void print(final String name, final Histogram lag) {
+        if (lag.getCount() > 0) {
+            System.out.printf(Locale.ROOT, "%-4s %5d clients, ticks behind: mean %.1f, p99 %d, max %d%n", name,
+                    lag.getCount(), lag.getMean(), lag.getPercentile(99), lag.getMax());
+        }
+    }
+
+    public static void main(final String[] args) throws IOException {
+        String address = "localhost:7777";
+        int count = 200;
+        int slow = 0;
+        double seconds = 10;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--address":
+                    address = args[i + 1];
+                    if (address.lastIndexOf(':') < 0) {
+                        System.err.println("Usage: --address HOST:PORT");
+                        return;
+                    }
+                    break;
+                case "--clients":
+                    count = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--slow":
+                    slow = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--seconds":
+                    seconds = Double.parseDouble(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        final int colon = address.lastIndexOf(':');
+        final SpectatorLoadTest test = new SpectatorLoadTest(
+                new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))),
+                count, slow);
+        test.run((long) (seconds * 1e9));
+        test.print(seconds);
+    }
+}
@@ -0,0 +1,412 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class SpectatorServer implements GameListener, Runnable {
+
+    //Every record the game publishes goes into one ring that all of the spectators
+    //are sent from, each from a position of its own. The game never waits for anyone:
+    //a spectator that falls more than LAG_LIMIT bytes behind skips ahead to the latest
+    //keyframe instead.
+    private static final int RING_CAPACITY = 1 << 16;
+    private static final int LAG_LIMIT = RING_CAPACITY / 2;
+    //A keyframe is sent at least this often (every 5 seconds) so that new and skipped
+    //spectators never have far to catch up from.
+    private static final int KEYFRAME_INTERVAL = 250;
+    //A record is at most a keyframe, or every kind of change at once, plus its length.
+    private static final int MAX_RECORD = 2 + SpectatorView.KEYFRAME_SIZE;
+    //A record that holds nothing but the length and the TICK message.
+    private static final int EMPTY_RECORD = 2 + 5;
+    //Room for one more lock and its clear, and for the piece, score and state after it.
+    //A tick with more locks than fit (a flurry of hard drops) is sent as a keyframe.
+    private static final int LOCK_ROOM = 7 + 6 + 6 + 11 + 2;
+    private static final TileType[] TYPES = TileType.values();
+    private static final int READ_SIZE = 256;
+    //Hundreds of spectators may all connect at once when a game starts.
+    private static final int BACKLOG = 1024;
+    //Whatever a spectator hasn't read yet waits in the ring rather than in the socket,
+    //so that it's the server that sees when someone has fallen behind.
+    private static final int SEND_BUFFER = 8192;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final byte[] ring;
+    private final int mask;
+    //The end of the last published record, and the start of the latest keyframe. Only
+    //the game loop writes them, and the keyframe is set after the record is published.
+    private final AtomicLong tail;
+    private volatile long latestKeyframe;
+    private final ByteBuffer record;
+    //What the spectators will see once they've applied every record so far. If the
+    //changes don't bring it in line with the engine (garbage, a new game), a keyframe
+    //is sent instead.
+    private final SpectatorView mirror;
+    private final ArrayList<Client> clients;
+    private final ByteBuffer ringView;
+    private final ByteBuffer readBuffer;
+    private final Thread thread;
+    private long lastKeyframeTick;
+    //Only the server's thread writes these, for the performance overlay to read.
+    private volatile int clientCount;
+    private volatile long resyncs;
+    private volatile long bytesSent;
+    private volatile boolean isClosed;
+
+    private static class Client {
+
+        private final SocketChannel channel;
+        //The next byte of the ring to send, and the end of the record that it's in.
+        private long position;
+        private long recordEnd;
+        //The rest of a half sent record, when the client skips ahead in the middle of it.
+        private final ByteBuffer pending;
+
+        private Client(final SocketChannel channel, final long position) {
+            this.channel = channel;
+            this.position = position;
+            this.recordEnd = position;
+            this.pending = ByteBuffer.allocate(MAX_RECORD);
+            pending.flip();
+        }
+    }
+
+    private SpectatorServer(final ServerSocketChannel server) throws IOException {
+        this.selector = Selector.open();
+        this.server = server;
+        this.ring = new byte[RING_CAPACITY];
+        this.mask = RING_CAPACITY - 1;
+        this.tail = new AtomicLong();
+        this.latestKeyframe = -1;
+        this.record = ByteBuffer.allocate(MAX_RECORD);
+        this.mirror = new SpectatorView();
+        this.clients = new ArrayList<>();
+        this.ringView = ByteBuffer.wrap(ring);
+        this.readBuffer = ByteBuffer.allocateDirect(READ_SIZE);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        this.thread = new Thread(this, "Tetris Spectators");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static SpectatorServer open(final int port) throws IOException {
+        final ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), BACKLOG);
+        return new SpectatorServer(server);
+    }
+
+    public void start(final GameEngine engine) {
+        //Called once, before the game is first stepped, so that anyone watching sees
+        //the game as it is even before anything happens in it.
+        record.clear();
+        record.putShort((short) 0);
+        putKeyframe(engine);
+        publish(engine);
+    }
+
+    @Override
+    public void onEvents(final GameEngine engine, final GameEvents events) {
+        //Listens to the game being broadcast, so ticks where nothing happened aren't
+        //published at all. A new game or garbage changes too much of the board to be
+        //worth describing, and is sent as a keyframe.
+        record.clear();
+        record.putShort((short) 0);
+        boolean keyframe = latestKeyframe < 0 || engine.getTick() - lastKeyframeTick >= KEYFRAME_INTERVAL
+                || events.contains(GameEvent.GAME_STARTED) || events.contains(GameEvent.GARBAGE_ADDED);
+        if (!keyframe && !putChanges(engine, events)) {
+            record.position(2);
+            keyframe = true;
+        }
+        if (keyframe) {
+            putKeyframe(engine);
+        }
+        if (!keyframe && record.position() == EMPTY_RECORD) {
+            return;
+        }
+        publish(engine);
+    }
+
+    private void publish(final GameEngine engine) {
+        final boolean keyframe = record.get(2) == SpectatorView.KEYFRAME;
+        applyToMirror();
+        if (!keyframe && !mirror.matches(engine)) {
+            record.position(2);
+            putKeyframe(engine);
+            applyToMirror();
+        }
+        final boolean isKeyframe = record.get(2) == SpectatorView.KEYFRAME;
+        final long start = tail.get();
+        record.putShort(0, (short) (record.position() - 2));
+        final int length = record.position();
+        final int offset = (int) start & mask;
+        final int first = Math.min(length, RING_CAPACITY - offset);
+        System.arraycopy(record.array(), 0, ring, offset, first);
+        System.arraycopy(record.array(), first, ring, 0, length - first);
+        tail.lazySet(start + length);
+        if (isKeyframe) {
+            this.lastKeyframeTick = engine.getTick();
+            this.latestKeyframe = start;
+        }
+    }
+
+    public void flush() {
+        //Called once per frame, after all of the frame's records have been published.
+        selector.wakeup();
+    }
+
+    private void applyToMirror() {
+        final int end = record.position();
+        record.position(2);
+        mirror.applyRecord(record, end - 2);
+    }
+
+    private void putKeyframe(final GameEngine engine) {
+        final BitBoard board = engine.getBoard();
+        record.put((byte) SpectatorView.KEYFRAME).putInt((int) engine.getTick()).putInt(engine.getScore())
+                .putInt(engine.getLines()).putShort((short) engine.getLevel())
+                .put((byte) SpectatorView.getFlags(engine));
+        putPiece(engine);
+        for (int y = 0; y < BitBoard.ROW_COUNT; y++) {
+            for (int x = 0; x < BitBoard.COL_COUNT; x += 2) {
+                record.put((byte) (board.getColor(x, y) << 4 | board.getColor(x + 1, y)));
+            }
+        }
+    }
+
+    private boolean putChanges(final GameEngine engine, final GameEvents events) {
+        //Returns false if the changes don't fit into a record.
+        record.put((byte) SpectatorView.TICK).putInt((int) engine.getTick());
+
+        //Locks and clears go out in the order they happened. The piece, the score and
+        //the state are only sent once each, as they are at the end of the tick.
+        boolean isPieceChanged = false;
+        boolean isScoreChanged = false;
+        boolean isStateChanged = false;
+        for (int i = 0; i < events.size(); i++) {
+            switch (events.getEvent(i)) {
+                case PIECE_LOCKED:
+                    if (record.remaining() < LOCK_ROOM) {
+                        return false;
+                    }
+                    putLock(TYPES[events.getA(i)], events.getB(i), events.getC(i), events.getD(i));
+                    break;
+                case LINES_CLEARED:
+                    record.put((byte) SpectatorView.CLEAR).put((byte) events.getA(i));
+                    for (int row = BitBoard.ROW_COUNT - 1; row >= 0; row--) {
+                        if ((events.getB(i) & 1 << row) != 0) {
+                            record.put((byte) row);
+                        }
+                    }
+                    break;
+                case PIECE_SPAWNED:
+                case PIECE_MOVED:
+                    isPieceChanged = true;
+                    break;
+                case SCORE_CHANGED:
+                case LEVEL_CHANGED:
+                    isScoreChanged = true;
+                    break;
+                case PAUSE_TOGGLED:
+                case GAME_OVER:
+                    isStateChanged = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (isPieceChanged) {
+            record.put((byte) SpectatorView.PIECE);
+            putPiece(engine);
+        }
+        if (isScoreChanged) {
+            record.put((byte) SpectatorView.SCORE).putInt(engine.getScore()).putInt(engine.getLines())
+                    .putShort((short) engine.getLevel());
+        }
+        if (isStateChanged) {
+            record.put((byte) SpectatorView.STATE).put((byte) SpectatorView.getFlags(engine));
+        }
+        return true;
+    }
+
+    private void putLock(final TileType type, final int col, final int row, final int rotation) {
+        final int cells = type.getCellCount(rotation);
+        record.put((byte) SpectatorView.LOCK).put((byte) SpectatorView.getCode(type)).put((byte) cells);
+        for (int cell = 0; cell < cells; cell++) {
+            final int x = col + type.getCellX(rotation, cell);
+            final int y = row + type.getCellY(rotation, cell);
+            record.put((byte) (y * BitBoard.COL_COUNT + x));
+        }
+    }
+
+    private void putPiece(final GameEngine engine) {
+        record.put((byte) SpectatorView.getCode(engine.getPieceType()))
+                .put((byte) SpectatorView.getCode(engine.getNextPieceType())).put((byte) engine.getPieceCol())
+                .put((byte) engine.getPieceRow()).put((byte) engine.getPieceRotation());
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!isClosed) {
+                selector.select();
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        read(key);
+                    }
+                }
+
+                //Everyone gets whatever has been published since they were last written
+                //to, and the ones whose sockets are full wait to be told they have room.
+                final long end = tail.get();
+                for (int i = clients.size() - 1; i >= 0; i--) {
+                    final Client client = clients.get(i);
+                    try {
+                        write(client, end);
+                    } catch (final IOException e) {
+                        drop(i);
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            System.err.println("Spectator server stopped: " + e);
+        }
+        close();
+        while (!clients.isEmpty()) {
+            drop(clients.size() - 1);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, SEND_BUFFER);
+            final Client client = new Client(channel, Math.max(latestKeyframe, 0));
+            channel.register(selector, SelectionKey.OP_READ, client);
+            clients.add(client);
+        }
+        this.clientCount = clients.size();
+    }
+
+    private void read(final SelectionKey key) {
+        //Spectators have nothing to say, so anything they send is thrown away. Reading
+        //is only how we notice that they've gone.
+        final Client client = (Client) key.attachment();
+        try {
+            int count;
+            do {
+                readBuffer.clear();
+                count = client.channel.read(readBuffer);
+            } while (count > 0);
+            if (count < 0) {
+                drop(clients.indexOf(client));
+            }
+        } catch (final IOException e) {
+            drop(clients.indexOf(client));
+        }
+    }
+
+    private void write(final Client client, final long end) throws IOException {
+        //A client that has fallen too far behind finishes the record it's in the middle
+        //of (the ring may soon write over it, so it's copied out first) and carries on
+        //from the latest keyframe.
+        final long keyframe = latestKeyframe;
+        if (end - client.position > RING_CAPACITY - MAX_RECORD) {
+            throw new IOException("Fell behind the ring");
+        }
+        if (end - client.position > LAG_LIMIT && keyframe > client.position) {
+            final int rest = (int) (client.recordEnd - client.position);
+            client.pending.clear();
+            copy(client.position, rest, client.pending);
+            client.pending.flip();
+            client.position = keyframe;
+            client.recordEnd = keyframe;
+            this.resyncs = resyncs + 1;
+        }
+        long sent = 0;
+        if (client.pending.hasRemaining()) {
+            sent += client.channel.write(client.pending);
+        }
+        if (!client.pending.hasRemaining()) {
+            //The ring wraps around, so the bytes to send may be in two pieces.
+            while (client.position < end) {
+                final int offset = (int) client.position & mask;
+                ringView.limit(offset + (int) Math.min(end - client.position, RING_CAPACITY - offset));
+                ringView.position(offset);
+                final int count = client.channel.write(ringView);
+                client.position += count;
+                sent += count;
+                if (ringView.hasRemaining()) {
+                    break;
+                }
+            }
+            while (client.recordEnd < client.position) {
+                client.recordEnd += 2 + ((ring[(int) client.recordEnd & mask] & 0xFF) << 8
+                        | ring[(int) (client.recordEnd + 1) & mask] & 0xFF);
+            }
+        }
+        this.bytesSent = bytesSent + sent;
+        client.channel.keyFor(selector).interestOps(client.pending.hasRemaining() || client.position < end
+                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private void copy(final long position, final int length, final ByteBuffer target) {
+        final int offset = (int) position & mask;
+        final int first = Math.min(length, RING_CAPACITY - offset);
+        target.put(ring, offset, first).put(ring, 0, length - first);
+    }
+
+    private void drop(final int index) {
+        if (index < 0) {
+            return;
+        }
+        final Client client = clients.remove(index);
+        try {
+            client.channel.close();
+        } catch (final IOException e) {
+            //It's gone either way.
+        }
+        this.clientCount = clients.size();
+    }
+
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    public long getResyncs() {
+        return resyncs;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public void close() {
+        if (isClosed) {
+            return;
+        }
+        this.isClosed = true;
+        selector.wakeup();
+        try {
+            server.close();
+        } catch (final IOException e) {
+            //We're shutting down anyway.
+        }
+    }
+}
@@ -0,0 +1,223 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+public class SpectatorView {
+
+    //The spectator stream is a sequence of records, each an unsigned short length
+    //followed by that many bytes of messages. Every record covers one tick of the game,
+    //and starts with a TICK or a KEYFRAME message. Each message is a type byte followed
+    //by its fields, big endian. Piece types are the TileType's ordinal plus one (0 for
+    //none), and columns and rows are signed bytes.
+    //TICK - tick (int). Everything after it happened during that tick.
+    public static final int TICK = 0;
+    //KEYFRAME - tick (int), score (int), lines (int), level (short), flags, piece,
+    //next piece, column, row, rotation, then the board's colors, two cells per byte.
+    public static final int KEYFRAME = 1;
+    //PIECE - piece, next piece, column, row, rotation.
+    public static final int PIECE = 2;
+    //LOCK - color, count, then count cells (row * COL_COUNT + column) that took it.
+    public static final int LOCK = 3;
+    //CLEAR - count, then count rows that were cleared, numbered as they were before.
+    public static final int CLEAR = 4;
+    //SCORE - score (int), lines (int), level (short).
+    public static final int SCORE = 5;
+    //STATE - flags.
+    public static final int STATE = 6;
+    public static final int PAUSED = 1;
+    public static final int NEW_GAME = 2;
+    public static final int GAME_OVER = 4;
+    public static final int CELL_COUNT = BitBoard.ROW_COUNT * BitBoard.COL_COUNT;
+    public static final int KEYFRAME_SIZE = 21 + CELL_COUNT / 2;
+    private static final TileType[] TYPES = TileType.values();
+    private final byte[] colors;
+    private final byte[] scratch;
+    private long tick = -1;
+    private int score;
+    private int lines;
+    private int level;
+    private int flags;
+    private int piece;
+    private int next;
+    private int col;
+    private int row;
+    private int rotation;
+    private boolean hasKeyframe;
+
+    public SpectatorView() {
+        this.colors = new byte[CELL_COUNT];
+        this.scratch = new byte[CELL_COUNT];
+    }
+
+    public void applyRecord(final ByteBuffer buffer, final int length) {
+        //Applies the messages of one record. Until the first keyframe there's nothing to
+        //apply the changes to, so anything before it is skipped.
+        final int end = buffer.position() + length;
+        while (buffer.position() < end) {
+            final int type = buffer.get(buffer.position());
+            if (!hasKeyframe && type != KEYFRAME) {
+                buffer.position(end);
+                return;
+            }
+            apply(buffer);
+        }
+        if (buffer.position() != end) {
+            throw new IllegalArgumentException("Record length mismatch");
+        }
+    }
+
+    public void apply(final ByteBuffer buffer) {
+        final int type = buffer.get();
+        switch (type) {
+            case TICK:
+                this.tick = buffer.getInt();
+                break;
+            case KEYFRAME:
+                this.tick = buffer.getInt();
+                this.score = buffer.getInt();
+                this.lines = buffer.getInt();
+                this.level = buffer.getShort();
+                this.flags = buffer.get();
+                readPiece(buffer);
+                for (int i = 0; i < CELL_COUNT; i += 2) {
+                    final int pair = buffer.get() & 0xFF;
+                    colors[i] = (byte) (pair >>> 4);
+                    colors[i + 1] = (byte) (pair & 0xF);
+                }
+                this.hasKeyframe = true;
+                break;
+            case PIECE:
+                readPiece(buffer);
+                break;
+            case LOCK: {
+                final byte color = buffer.get();
+                final int count = buffer.get() & 0xFF;
+                for (int i = 0; i < count; i++) {
+                    colors[buffer.get() & 0xFF] = color;
+                }
+                break;
+            }
+            case CLEAR: {
+                //Copy down every row that wasn't cleared, bottom up, like checkLines does.
+                final int count = buffer.get() & 0xFF;
+                long cleared = 0;
+                for (int i = 0; i < count; i++) {
+                    cleared |= 1L << buffer.get();
+                }
+                int target = BitBoard.ROW_COUNT - 1;
+                for (int y = BitBoard.ROW_COUNT - 1; y >= 0; y--) {
+                    if ((cleared & (1L << y)) == 0) {
+                        System.arraycopy(colors, y * BitBoard.COL_COUNT, scratch, target-- * BitBoard.COL_COUNT,
+                                BitBoard.COL_COUNT);
+                    }
+                }
+                Arrays.fill(scratch, 0, (target + 1) * BitBoard.COL_COUNT, (byte) 0);
+                System.arraycopy(scratch, 0, colors, 0, CELL_COUNT);
+                break;
+            }
+            case SCORE:
+                this.score = buffer.getInt();
+                this.lines = buffer.getInt();
+                this.level = buffer.getShort();
+                break;
+            case STATE:
+                this.flags = buffer.get();
+                break;
+            default:
+                throw new IllegalArgumentException("Bad message type: " + type);
+        }
+    }
+
+    private void readPiece(final ByteBuffer buffer) {
+        this.piece = buffer.get();
+        this.next = buffer.get();
+        this.col = buffer.get();
+        this.row = buffer.get();
+        this.rotation = buffer.get();
+    }
+
+    public boolean matches(final GameEngine engine) {
+        //Whether this view shows exactly what the engine does.
+        final BitBoard board = engine.getBoard();
+        for (int y = 0; y < BitBoard.ROW_COUNT; y++) {
+            for (int x = 0; x < BitBoard.COL_COUNT; x++) {
+                if (colors[y * BitBoard.COL_COUNT + x] != board.getColor(x, y)) {
+                    return false;
+                }
+            }
+        }
+        return hasKeyframe && score == engine.getScore() && lines == engine.getLines() && level == engine.getLevel()
+                && flags == getFlags(engine) && piece == getCode(engine.getPieceType())
+                && next == getCode(engine.getNextPieceType()) && col == engine.getPieceCol()
+                && row == engine.getPieceRow() && rotation == engine.getPieceRotation();
+    }
+
+    public static int getFlags(final GameEngine engine) {
+        return (engine.isPaused() ? PAUSED : 0) | (engine.isNewGame() ? NEW_GAME : 0)
+                | (engine.isGameOver() ? GAME_OVER : 0);
+    }
+
+    public static int getCode(final TileType type) {
+        return type == null ? 0 : type.ordinal() + 1;
+    }
+
+    public boolean hasKeyframe() {
+        return hasKeyframe;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getLines() {
+        return lines;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public boolean isPaused() {
+        return (flags & PAUSED) != 0;
+    }
+
+    public boolean isNewGame() {
+        return (flags & NEW_GAME) != 0;
+    }
+
+    public boolean isGameOver() {
+        return (flags & GAME_OVER) != 0;
+    }
+
+    public int getColor(final int x, final int y) {
+        return colors[y * BitBoard.COL_COUNT + x];
+    }
+
+    public TileType getPieceType() {
+        return piece == 0 ? null : TYPES[piece - 1];
+    }
+
+    public TileType getNextPieceType() {
+        return next == 0 ? null : TYPES[next - 1];
+    }
+
+    public int getPieceCol() {
+        return col;
+    }
+
+    public int getPieceRow() {
+        return row;
+    }
+
+    public int getPieceRotation() {
+        return rotation;
+    }
+}
@@ -0,0 +1,49 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Locale;
+
+
+public class StaticLayer {
+
+    public interface Painter {
+
+        void paint(Graphics2D g, int width, int height);
+    }
+
+    private final Painter painter;
+    private Image image;
+    private int width;
+    private int height;
+    private Locale locale;
+    private GraphicsConfiguration config;
+
+    public StaticLayer(final Painter painter) {
+        this.painter = painter;
+    }
+
+    public void draw(final Graphics g, final Component component, final int width, final int height) {
+        //The layer is painted once into a transparent image and then simply composited
+        //onto the component. It is only painted again if the size or locale it was
+        //painted for changes, or it has to be drawn to a different screen.
+        final GraphicsConfiguration current = ((Graphics2D) g).getDeviceConfiguration();
+        final Locale currentLocale = component.getLocale();
+        if (image == null || width != this.width || height != this.height || current != config
+                || !currentLocale.equals(locale)) {
+            this.width = width;
+            this.height = height;
+            this.config = current;
+            this.locale = currentLocale;
+            this.image = render(current);
+        }
+        g.drawImage(image, 0, 0, null);
+    }
+
+    private Image render(final GraphicsConfiguration gc) {
+        final BufferedImage layer = gc != null ? gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = layer.createGraphics();
+        painter.paint(g, width, height);
+        g.dispose();
+        return layer;
+    }
+}
@@ -1,131 +1,195 @@
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
-import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.io.File;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
 import java.util.Random;
 
 
 public class Tetris extends JFrame {
 
-    private static final long FRAME_TIME = 1000L / 50L;
-    private static final int TYPE_COUNT = TileType.values().length;
+    //After a stall, at most this many missed frames are run to catch up.
+    private static final int MAX_CATCH_UP = 5;
+    //Room for far more key presses than anyone can make between two frames.
+    private static final int INPUT_CAPACITY = 64;
+    private static final String MUSIC = "/Original Tetris theme (Tetris Soundtrack).wav";
+    //How much each press of + or - changes the volume by.
+    private static final float VOLUME_STEP = 0.1f;
+    private final GameEngine engine;
     private final BoardPanel board;
     private final SidePanel side;
-    private boolean isPaused;
-    private boolean isNewGame;
-    private boolean isGameOver;
-    private int level;
-    private int score;
-    private Random random;
-    private Clock logicTimer;
-    private TileType currentType;
-    private TileType nextType;
-    private int currentCol;
-    private int currentRow;
-    private int currentRotation;
-    private int dropCooldown;
-    private float gameSpeed;
-
-    private Tetris() {
+    //The game as the panels paint it. The game loop publishes a copy of the engines
+    //here after every frame's ticks, since the panels are painted on other threads.
+    private final SharedFrame shown;
+    private final SharedFrame opponentShown;
+    //Only set in the active rendering mode, where a render thread of its own draws
+    //the game instead of Swing.
+    private final RenderCanvas canvas;
+    //Key presses are queued up on the EDT and applied by the game loop, so only the
+    //game loop's thread ever touches the engine.
+    private final InputQueue inputs;
+    //The performance overlay, toggled with F3.
+    private final PerfStats stats;
+    private final AudioMixer audio;
+    //The computer player, if it's currently switched on. It plays through the same
+    //inputs as the keyboard, one per frame.
+    private volatile AiPolicy ai;
+    //When watching a replay, the replay plays the game and the keyboard is ignored.
+    //Otherwise, if isRecorded is set, every game gets a recording of its own, which is
+    //started along with the game and saved to a new file next to recordPath when it ends.
+    private final Replay replay;
+    private final boolean isRecorded;
+    private final Path recordPath;
+    private Replay recording;
+    //If set, the game is saved after every piece and every pause, and resumed from
+    //the save the next time the game starts.
+    private final SnapshotWriter snapshots;
+    //Only set in the versus mode, along with the view of the opponent's board.
+    private final VersusGame versus;
+    private final OpponentPanel opponent;
+    //Only set when the game is broadcast to spectators.
+    private final SpectatorServer spectators;
+    //Every finished game goes into the high scores under the player's name, along with
+    //how long it took and where its replay was saved.
+    private final HighScores scores;
+    private final String name;
+    private final long seed;
+    private long gameStartTick;
+
+    private Tetris(final boolean active, final int fps, final long seed, final Replay replay, final Path recordPath,
+            final Path savePath, final VersusGame versus, final SpectatorServer spectators,
+            final HighScores scores, final String name, final Randomizer randomizer, final int previewCount) {
         super("Tetris");
         setLayout(new BorderLayout());
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         setResizable(false);
-        this.board = new BoardPanel(this);
-        this.side = new SidePanel(this);
-        add(board, BorderLayout.CENTER);
-        add(side, BorderLayout.EAST);
+        //A versus game is never saved or resumed. The opponent's copy of it starts from
+        //the seed, and garbage isn't something a save can bring back in step with them.
+        final boolean isSaved = replay == null && versus == null && savePath != null;
+        final GameEngine resumed = isSaved ? resume(savePath, seed) : null;
+        if (resumed != null) {
+            this.engine = resumed;
+        } else if (replay != null) {
+            this.engine = new GameEngine(seed, replay.getRandomizer(), replay.getPreviewCount());
+        } else {
+            this.engine = new GameEngine(seed, randomizer, previewCount);
+        }
+        this.replay = replay;
+        this.recordPath = recordPath;
+        this.snapshots = isSaved ? new SnapshotWriter(savePath) : null;
+        this.versus = versus;
+        this.shown = new SharedFrame();
+        this.opponentShown = versus != null ? new SharedFrame() : null;
+        this.opponent = versus != null ? new OpponentPanel(versus, opponentShown) : null;
+        this.spectators = spectators;
+        this.scores = scores;
+        this.name = name;
+        this.seed = seed;
+
+        //A versus game takes garbage that isn't part of the replay format, so it can't
+        //be recorded as a replay. A resumed game isn't either, since the recording only
+        //starts along with a new game.
+        this.isRecorded = recordPath != null && replay == null && versus == null;
+        this.board = new BoardPanel(engine, shown);
+        this.side = new SidePanel(engine, shown);
+        this.inputs = new InputQueue(INPUT_CAPACITY);
+        this.stats = new PerfStats();
+        this.audio = new AudioMixer(new MusicPlayer(MUSIC, AudioMixer.FORMAT), stats);
+
+        //Everything that reacts to the game listens to the engine's events, which come
+        //once per tick and only when something actually happened.
+        engine.addListener(new GameSounds(audio));
+        engine.addListener(board);
+        engine.addListener(side);
+        engine.addListener(this::onEvents);
+        if (versus != null) {
+            engine.addListener(versus);
+        }
+        if (spectators != null) {
+            spectators.start(engine);
+            engine.addListener(spectators);
+        }
+        board.setStats(stats);
+        side.setStats(stats);
+        if (spectators != null) {
+            stats.setSpectators(spectators);
+        }
+        side.setHighScores(scores);
+        if (active) {
+            this.canvas = new RenderCanvas(board, side, opponent, shown, opponentShown, fps);
+            setIgnoreRepaint(true);
+            add(canvas, BorderLayout.CENTER);
+        } else {
+            this.canvas = null;
+            add(board, BorderLayout.CENTER);
+            add(side, BorderLayout.EAST);
+            if (opponent != null) {
+                add(opponent, BorderLayout.WEST);
+            }
+        }
+
+        //The frame only translates key presses into engine inputs. All of the rules,
+        //including whether an input is allowed right now, live in the GameEngine, and
+        //the inputs only reach it at the start of the next tick.
         addKeyListener(new KeyAdapter() {
             @Override
             public void keyPressed(final KeyEvent e) {
                 switch (e.getKeyCode()) {
-
-                    //Drop - When pressed, we check to see that the game is not
-                    //paused and that there is no drop cooldown, then set the
-                    //logic timer to run at a speed of 25 cycles per second.
                     case KeyEvent.VK_S:
-                        if (!isPaused && dropCooldown == 0) {
-                            logicTimer.setCyclesPerSecond(25.0f);
-                        }
+                        inputs.offer(Input.DROP, System.nanoTime());
+                        break;
+                    case KeyEvent.VK_W:
+                        inputs.offer(Input.HARD_DROP, System.nanoTime());
                         break;
-
-                    //Move Left - When pressed, we check to see that the game is
-                    //not paused and that the position to the left of the current
-                    //position is valid. If so, we decrement the current column by 1.
                     case KeyEvent.VK_A:
-                        if (!isPaused && board.isValidAndEmpty(currentType, currentCol - 1, currentRow,
-                                currentRotation)) {
-                            currentCol--;
-                        }
+                        inputs.offer(Input.MOVE_LEFT, System.nanoTime());
                         break;
-
-                    //Move Right - When pressed, we check to see that the game is
-                    //not paused and that the position to the right of the current
-                    //position is valid. If so, we increment the current column by 1.
                     case KeyEvent.VK_D:
-                        if (!isPaused && board.isValidAndEmpty(currentType, currentCol + 1, currentRow,
-                                currentRotation)) {
-                            currentCol++;
-                        }
+                        inputs.offer(Input.MOVE_RIGHT, System.nanoTime());
                         break;
-
-                    //Rotate Anticlockwise - When pressed, check to see that the game is not paused
-                    //and then attempt to rotate the piece anticlockwise. Because of the size and
-                    //complexity of the rotation code, as well as it's similarity to clockwise
-                    //rotation, the code for rotating the piece is handled in another method.
                     case KeyEvent.VK_Q:
-                        if (!isPaused) {
-                            rotatePiece((currentRotation == 0) ? 3 : currentRotation - 1);
-                        }
+                        inputs.offer(Input.ROTATE_ANTICLOCKWISE, System.nanoTime());
                         break;
-
-                    //Rotate Clockwise - When pressed, check to see that the game is not paused
-                    //and then attempt to rotate the piece clockwise. Because of the size and
-                    //complexity of the rotation code, as well as it's similarity to anticlockwise
-                    //rotation, the code for rotating the piece is handled in another method.
                     case KeyEvent.VK_E:
-                        if (!isPaused) {
-                            rotatePiece((currentRotation == 3) ? 0 : currentRotation + 1);
-                        }
+                        inputs.offer(Input.ROTATE_CLOCKWISE, System.nanoTime());
                         break;
-
-                    //Pause Game - When pressed, check to see that we're currently playing a game.
-                    //If so, toggle the pause variable and update the logic timer to reflect this
-                    //change, otherwise the game will execute a huge number of updates and essentially
-                    //cause an instant game over when we unpause if we stay paused for more than a
-                    //minute or so.
                     case KeyEvent.VK_P:
-                        if (!isGameOver && !isNewGame) {
-                            isPaused = !isPaused;
-                            logicTimer.setPaused(isPaused);
-                        }
+                        inputs.offer(Input.PAUSE, System.nanoTime());
                         break;
-
-                    //Start Game - When pressed, check to see that we're in either a game over or new
-                    //game state. If so, reset the game.
                     case KeyEvent.VK_ENTER:
-                        if (isGameOver || isNewGame) {
-                            resetGame();
-                        }
+                        inputs.offer(Input.START, System.nanoTime());
+                        break;
+                    case KeyEvent.VK_I:
+                        ai = ai == null ? new AiPolicy() : null;
+                        break;
+                    case KeyEvent.VK_F3:
+                        stats.toggleVisible();
+                        break;
+                    case KeyEvent.VK_M:
+                        audio.setMuted(!audio.isMuted());
+                        break;
+                    case KeyEvent.VK_PLUS:
+                    case KeyEvent.VK_ADD:
+                        audio.setVolume(audio.getVolume() + VOLUME_STEP);
+                        break;
+                    case KeyEvent.VK_MINUS:
+                    case KeyEvent.VK_SUBTRACT:
+                        audio.setVolume(audio.getVolume() - VOLUME_STEP);
                         break;
                 }
             }
 
             @Override
             public void keyReleased(final KeyEvent e) {
-                //Drop - When released, we set the speed of the logic timer
-                //back to whatever the current game speed is and clear out
-                //any cycles that might still be elapsed.
                 if (e.getKeyCode() == KeyEvent.VK_S) {
-                    logicTimer.setCyclesPerSecond(gameSpeed);
-                    logicTimer.reset();
+                    inputs.offer(Input.DROP_RELEASE, System.nanoTime());
                 }
             }
         });
@@ -135,204 +199,269 @@ public class Tetris extends JFrame {
         pack();
         setLocationRelativeTo(null);
         setVisible(true);
+        publishGame();
+        if (canvas != null) {
+            canvas.start();
+        }
     }
 
-    private void startMusic() throws LineUnavailableException, IOException, UnsupportedAudioFileException {
-        AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(
-                new File("src/main/resources/Original Tetris theme (Tetris Soundtrack).wav"));
-        Clip clip = AudioSystem.getClip();
-        clip.open(audioInputStream);
-        clip.loop(Clip.LOOP_CONTINUOUSLY);
-        clip.start();
-    }
-
-    private void startGame() throws UnsupportedAudioFileException, LineUnavailableException, IOException {
-        this.random = new Random();
-        this.isNewGame = true;
-        this.gameSpeed = 1.0f;
-        //Set up the timer to keep the game from running before the user presses enter to start it.
-        this.logicTimer = new Clock(gameSpeed);
-        logicTimer.setPaused(true);
-
-        startMusic();
+    private void startGame() {
+        //The music and sound effects are mixed on a thread of their own.
+        audio.start();
 
+        final FrameScheduler scheduler = new FrameScheduler(GameEngine.FRAME_NANOS, MAX_CATCH_UP);
         while (true) {
-            final long start = System.nanoTime();
-            logicTimer.update();
-            if (logicTimer.hasElapsedCycle()) {
-                updateGame();
+            //The game logic runs at a fixed rate, once for every frame that is due.
+            final int frames = scheduler.awaitFrame();
+            stats.recordFrame(System.nanoTime(), scheduler.getLastLateness(), frames, scheduler.getDroppedFrames());
+            for (int i = 0; i < frames; i++) {
+                if (replay != null) {
+                    stepReplay();
+                } else {
+                    stepLive();
+                }
             }
-            if (dropCooldown > 0) {
-                dropCooldown--;
+            if (spectators != null) {
+                spectators.flush();
             }
+            publishGame();
             renderGame();
-            //Sleep to cap the framerate.
-            final long delta = (System.nanoTime() - start) / 1000000L;
-            if (delta < FRAME_TIME) {
-                try {
-                    Thread.sleep(FRAME_TIME - delta);
-                } catch (final Exception e) {
-                    e.printStackTrace();
-                }
-            }
         }
     }
 
-    private void updateGame() {
-        //Check to see if the piece's position can move down to the next row.
-        if (board.isValidAndEmpty(currentType, currentCol, currentRow + 1, currentRotation)) {
-            //Increment the current row if it's safe to do so.
-            currentRow++;
-        } else {
-            //We've either reached the bottom of the board, or landed on another piece, so
-            //we need to add the piece to the board.
-            board.addPiece(currentType, currentCol, currentRow, currentRotation);
-
-            //Check to see if adding the new piece resulted in any cleared lines. If so,
-            //increase the player's score. (Up to 4 lines can be cleared in a single go;
-            //[1 = 100pts, 2 = 200pts, 3 = 400pts, 4 = 800pts]).
-            final int cleared = board.checkLines();
-            if (cleared > 0) {
-                score += 50 << cleared;
+    private void stepLive() {
+        if (versus != null) {
+            versus.receive(engine);
+        }
+        Input input;
+        while ((input = inputs.poll()) != null) {
+            stats.recordInputLatency(System.nanoTime() - inputs.getPolledTime());
+            applyInput(input);
+        }
+        final AiPolicy player = ai;
+        if (player != null) {
+            input = player.nextInput(engine);
+            if (input != null) {
+                applyInput(input);
             }
-
-            //Increase the speed slightly for the next piece and update the game's timer
-            //to reflect the increase.
-            gameSpeed += 0.035f;
-            logicTimer.setCyclesPerSecond(gameSpeed);
-            logicTimer.reset();
-
-            //Set the drop cooldown so the next piece doesn't automatically come flying
-            //in from the heavens immediately after this piece hits if we've not reacted
-            //yet. (~0.5 second buffer).
-            dropCooldown = 25;
-
-            //Update the difficulty level. This has no effect on the game, and is only
-            //used in the "Level" string in the SidePanel.
-            level = (int) (gameSpeed * 1.70f);
-
-            //Spawn a new piece to control.
-            spawnPiece();
         }
-    }
-
-    private void renderGame() {
-        board.repaint();
-        side.repaint();
-    }
-
-    private void resetGame() {
-        this.level = 1;
-        this.score = 0;
-        this.gameSpeed = 1.0f;
-        this.nextType = TileType.values()[random.nextInt(TYPE_COUNT)];
-        this.isNewGame = false;
-        this.isGameOver = false;
-        board.clear();
-        logicTimer.reset();
-        logicTimer.setCyclesPerSecond(gameSpeed);
-        spawnPiece();
-    }
-
-    private void spawnPiece() {
-        //Poll the last piece and reset our position and rotation to
-        //their default variables, then pick the next piece to use.
-        this.currentType = nextType;
-        this.currentCol = currentType.getSpawnColumn();
-        this.currentRow = currentType.getSpawnRow();
-        this.currentRotation = 0;
-        this.nextType = TileType.values()[random.nextInt(TYPE_COUNT)];
-
-        //If the spawn point is invalid, we need to pause the game and flag that we've lost
-        //because it means that the pieces on the board have gotten too high.
-        if (!board.isValidAndEmpty(currentType, currentCol, currentRow, currentRotation)) {
-            this.isGameOver = true;
-            logicTimer.setPaused(true);
+        engine.step();
+        if (versus != null) {
+            versus.stepped(engine);
         }
     }
 
-    private void rotatePiece(final int newRotation) {
-        //Sometimes pieces will need to be moved when rotated to avoid clipping
-        //out of the board (the I piece is a good example of this). Here we store
-        //a temporary row and column in case we need to move the tile as well.
-        int newColumn = currentCol;
-        int newRow = currentRow;
-
-        //Get the insets for each of the sides. These are used to determine how
-        //many empty rows or columns there are on a given side.
-        final int left = currentType.getLeftInset(newRotation);
-        final int right = currentType.getRightInset(newRotation);
-        final int top = currentType.getTopInset(newRotation);
-        final int bottom = currentType.getBottomInset(newRotation);
-
-        //If the current piece is too far to the left or right, move the piece away from the edges
-        //so that the piece doesn't clip out of the map and automatically become invalid.
-        if (currentCol < -left) {
-            newColumn -= currentCol - left;
-        } else if (currentCol + currentType.getDimension() - right >= BoardPanel.COL_COUNT) {
-            newColumn -= (currentCol + currentType.getDimension() - right) - BoardPanel.COL_COUNT + 1;
+    private void onEvents(final GameEngine engine, final GameEvents events) {
+        //The events come after the engine has counted the tick, so a game started by
+        //this tick's inputs started at the tick before. When a game ends, it goes into the
+        //high scores, whose thread also saves its replay to a file of the game's own.
+        //The recording has to take its last checkpoint before the game's replay is saved.
+        if (events.contains(GameEvent.GAME_STARTED)) {
+            gameStartTick = engine.getTick() - 1;
         }
-
-        //If the current piece is too far to the top or bottom, move the piece away from the edges
-        //so that the piece doesn't clip out of the map and automatically become invalid.
-        if (currentRow < -top) {
-            newRow -= currentRow - top;
-        } else if (currentRow + currentType.getDimension() - bottom >= BoardPanel.ROW_COUNT) {
-            newRow -= (currentRow + currentType.getDimension() - bottom) - BoardPanel.ROW_COUNT + 1;
+        if (recording != null) {
+            recording.onEvents(engine, events);
         }
-
-        //Check to see if the new position is acceptable. If it is, update the rotation and
-        //position of the piece.
-        if (board.isValidAndEmpty(currentType, newColumn, newRow, newRotation)) {
-            currentRotation = newRotation;
-            currentRow = newRow;
-            currentCol = newColumn;
+        if (events.contains(GameEvent.GAME_OVER)) {
+            final Replay finished = recording;
+            this.recording = null;
+            if (scores != null) {
+                final long time = System.currentTimeMillis();
+                final byte[] bytes = finishRecording(finished);
+                scores.submit(new HighScores.Entry(name, engine.getScore(), engine.getLevel(), engine.getLines(),
+                        engine.getTick() - gameStartTick, time, finished != null ? finished.getSeed() : seed,
+                        bytes != null ? getReplayPath(time) : ""), bytes);
+            }
         }
-    }
-
-    public boolean isPaused() {
-        return isPaused;
-    }
 
-    public boolean isGameOver() {
-        return isGameOver;
+        //The game is saved after every piece and every pause.
+        if (snapshots != null && (events.contains(GameEvent.PIECE_LOCKED)
+                || events.contains(GameEvent.PAUSE_TOGGLED) || events.contains(GameEvent.GAME_STARTED))) {
+            snapshots.save(engine);
+        }
     }
 
-    public boolean isNewGame() {
-        return isNewGame;
+    private void applyInput(final Input input) {
+        //The input that starts a game also starts its recording, which begins with the
+        //seed a new engine would deal the game's pieces from. Inputs are recorded with
+        //the tick they're applied before, which is exactly where a replay will apply them
+        //again.
+        if (isRecorded && input == Input.START && engine.canStart()) {
+            this.recording = new Replay(engine.getStartSeed(), engine.getRandomizer(), engine.getPreviewCount(),
+                    engine.getTick());
+        }
+        if (recording != null) {
+            recording.record(engine.getTick(), input);
+        }
+        if (versus != null) {
+            versus.sendInput(engine, input);
+        }
+        engine.handleInput(input);
     }
 
-    public int getScore() {
-        return score;
+    private static GameEngine resume(final Path savePath, final long seed) {
+        //Returns null if there's no saved game, or if it can't be loaded, in which case
+        //a new game is started (and will save over the broken one).
+        try {
+            final Snapshot snapshot = Snapshot.read(savePath);
+            if (snapshot == null) {
+                return null;
+            }
+            final GameEngine engine = new GameEngine(seed);
+            engine.load(snapshot);
+            return engine;
+        } catch (final IOException e) {
+            System.err.println("Could not resume the saved game: " + e);
+            return null;
+        }
     }
 
-    public int getLevel() {
-        return level;
+    private void stepReplay() {
+        while (inputs.poll() != null) {
+            //The keyboard has no say while a replay is playing.
+        }
+        if (!replay.isFinished(engine)) {
+            replay.applyInputs(engine);
+            engine.step();
+        }
     }
 
-    public TileType getPieceType() {
-        return currentType;
+    private String getReplayPath(final long time) {
+        //Every game's replay is kept, next to recordPath and named after when it ended,
+        //so each high score can point at its own.
+        return recordPath + "-" + time + ".replay";
     }
 
-    public TileType getNextPieceType() {
-        return nextType;
+    private byte[] finishRecording(final Replay finished) {
+        //Returns the replay to save, or null if there's none to save. Only the bytes are
+        //made here, the file is written by the high scores' thread.
+        if (finished == null) {
+            return null;
+        }
+        finished.finish(engine);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            finished.write(bytes);
+        } catch (final IOException e) {
+            //Nothing can go wrong writing to memory.
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
     }
 
-    public int getPieceCol() {
-        return currentCol;
+    private void publishGame() {
+        //Called by the game loop once its ticks for the frame are done.
+        shown.publish(engine);
+        if (opponentShown != null) {
+            opponentShown.publish(versus.getOpponent());
+        }
     }
 
-    public int getPieceRow() {
-        return currentRow;
+    private void renderGame() {
+        //The panels decide for themselves which parts, if any, need repainting. In the
+        //active mode the render thread draws on its own schedule instead.
+        if (canvas == null) {
+            board.refresh();
+            side.refresh();
+            if (opponent != null) {
+                opponent.refresh();
+            }
+        }
     }
 
-    public int getPieceRotation() {
-        return currentRotation;
-    }
+    public static void main(final String[] args) throws IOException {
+        //"--batch" runs the headless self-play simulator instead of opening a window,
+        //"--verify" checks archives of replays by playing them again, and "--load-test"
+        //connects a crowd of spectators to a broadcasting game.
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchSimulator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--verify")) {
+            ReplayVerifier.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--load-test")) {
+            SpectatorLoadTest.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
 
-    public static void main(final String[] args)
-            throws UnsupportedAudioFileException, LineUnavailableException, IOException {
-        final Tetris tetris = new Tetris();
+        //"--active" draws the game from a render thread of its own rather than through
+        //Swing. "--fps N" caps its frame rate, 0 leaves it uncapped and by default it
+        //follows the screen's refresh rate. "--record FILE" saves the replay of every game
+        //that ends to FILE-<time>.replay, and "--replay FILE" plays one back. "--save FILE"
+        //keeps the game saved as it's played, and resumes it from there on the next start.
+        //"--host PORT" and "--connect HOST:PORT" play a versus game against another
+        //Tetris, with one of them hosting and the other connecting. "--broadcast PORT"
+        //lets any number of spectators watch the game. High scores are kept in
+        //"--scores DIR" (.tetris in the home directory by default) under "--name NAME".
+        //"--randomizer uniform|bag|history" picks how pieces are dealt (bag by default)
+        //and "--preview N" how many upcoming pieces are shown. A versus game always uses
+        //the defaults, so both players get the same pieces dealt the same way.
+        boolean active = false;
+        int fps = -1;
+        Path recordPath = null;
+        Path savePath = null;
+        Replay replay = null;
+        String host = null;
+        int port = -1;
+        int broadcastPort = -1;
+        Path scoresPath = Paths.get(System.getProperty("user.home"), ".tetris");
+        String name = System.getProperty("user.name", "");
+        Randomizer randomizer = Randomizer.BAG;
+        int previewCount = GameEngine.DEFAULT_PREVIEW;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--active")) {
+                active = true;
+            } else if (args[i].equals("--fps") && i + 1 < args.length) {
+                fps = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--record") && i + 1 < args.length) {
+                recordPath = Paths.get(args[++i]);
+            } else if (args[i].equals("--save") && i + 1 < args.length) {
+                savePath = Paths.get(args[++i]);
+            } else if (args[i].equals("--host") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--connect") && i + 1 < args.length) {
+                final String address = args[++i];
+                final int colon = address.lastIndexOf(':');
+                if (colon < 0) {
+                    System.err.println("Usage: --connect HOST:PORT");
+                    return;
+                }
+                host = address.substring(0, colon);
+                port = Integer.parseInt(address.substring(colon + 1));
+            } else if (args[i].equals("--broadcast") && i + 1 < args.length) {
+                broadcastPort = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--scores") && i + 1 < args.length) {
+                scoresPath = Paths.get(args[++i]);
+            } else if (args[i].equals("--name") && i + 1 < args.length) {
+                name = args[++i];
+            } else if (args[i].equals("--randomizer") && i + 1 < args.length) {
+                randomizer = Randomizer.valueOf(args[++i].toUpperCase(Locale.ROOT));
+            } else if (args[i].equals("--preview") && i + 1 < args.length) {
+                previewCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--replay") && i + 1 < args.length) {
+                try (final InputStream in = Files.newInputStream(Paths.get(args[++i]))) {
+                    replay = Replay.read(in);
+                } catch (final IOException e) {
+                    System.err.println("Could not load the replay: " + e);
+                    return;
+                }
+            }
+        }
+        final long seed = replay != null ? replay.getSeed() : new Random().nextLong();
+        VersusGame versus = null;
+        if (port >= 0 && replay == null) {
+            final VersusLink link = host == null ? VersusLink.host(port, seed) : VersusLink.connect(host, port, seed);
+            System.out.println(host == null ? "Waiting for an opponent on port " + port : "Connecting to " + host);
+            versus = new VersusGame(link, seed, link.awaitPeer());
+            randomizer = Randomizer.BAG;
+            previewCount = GameEngine.DEFAULT_PREVIEW;
+        }
+        final SpectatorServer spectators = broadcastPort >= 0 ? SpectatorServer.open(broadcastPort) : null;
+        final HighScores scores = replay == null ? new HighScores(scoresPath) : null;
+        final Tetris tetris = new Tetris(active, fps, seed, replay, recordPath, savePath, versus, spectators, scores,
+                name, randomizer, previewCount);
         tetris.startGame();
     }
 }
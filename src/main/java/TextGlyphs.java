@@ -0,0 +1,91 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+
+public class TextGlyphs {
+
+    //Drawing text with drawString means turning it into a String and laying out its
+    //glyphs again on every frame. Instead, each printable ASCII character is rendered
+    //once into an image of its own, and text is drawn character by character from
+    //those. Anything outside of that range is drawn as a '?'.
+    private static final char FIRST = ' ';
+    private static final char LAST = '~';
+    private final Font font;
+    private final Color color;
+    private final Image[] images;
+    private final int[] widths;
+    private int ascent;
+    private GraphicsConfiguration config;
+
+    public TextGlyphs(final Font font, final Color color) {
+        this.font = font;
+        this.color = color;
+        this.images = new Image[LAST - FIRST + 1];
+        this.widths = new int[LAST - FIRST + 1];
+    }
+
+    public void draw(final Graphics g, final int value, final int x, final int y) {
+        //Draws a non-negative value with its baseline at y, just like drawString would.
+        prepare(g);
+        int divisor = 1;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+        int left = x;
+        int rest = value;
+        for (; divisor > 0; divisor /= 10) {
+            final int digit = rest / divisor;
+            rest -= digit * divisor;
+            left = drawChar(g, (char) ('0' + digit), left, y);
+        }
+    }
+
+    public void draw(final Graphics g, final char[] text, final int length, final int x, final int y) {
+        prepare(g);
+        int left = x;
+        for (int i = 0; i < length; i++) {
+            left = drawChar(g, text[i], left, y);
+        }
+    }
+
+    private int drawChar(final Graphics g, final char c, final int x, final int y) {
+        //Returns where the next character goes.
+        final int index = (c < FIRST || c > LAST ? '?' : c) - FIRST;
+        g.drawImage(images[index], x, y - ascent, null);
+        return x + widths[index];
+    }
+
+    private void prepare(final Graphics g) {
+        final GraphicsConfiguration current = ((Graphics2D) g).getDeviceConfiguration();
+        if (images[0] == null || current != config) {
+            render(current);
+        }
+    }
+
+    private void render(final GraphicsConfiguration gc) {
+        this.config = gc;
+        final BufferedImage probe = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D probeGraphics = probe.createGraphics();
+        final FontMetrics metrics = probeGraphics.getFontMetrics(font);
+        probeGraphics.dispose();
+        this.ascent = metrics.getAscent();
+        final int height = metrics.getAscent() + metrics.getDescent();
+        for (char c = FIRST; c <= LAST; c++) {
+            final char[] text = {c};
+            final int index = c - FIRST;
+            widths[index] = metrics.charWidth(c);
+            //A space is still given an image, one pixel wide if need be, so that every
+            //character can be drawn the same way.
+            final int width = Math.max(1, widths[index]);
+            final BufferedImage image = gc != null
+                    ? gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                    : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            final Graphics2D g = image.createGraphics();
+            g.setFont(font);
+            g.setColor(color);
+            g.drawChars(text, 0, 1, 0, ascent);
+            g.dispose();
+            images[index] = image;
+        }
+    }
+}
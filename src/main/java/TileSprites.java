@@ -0,0 +1,114 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+
+public class TileSprites {
+
+    private static final TileType[] TYPES = TileType.values();
+    private static final Color GARBAGE_COLOR = new Color(128, 128, 128);
+    private static final Map<Long, TileSprites> SHARED = new HashMap<>();
+    private final int tileSize;
+    private final int shadeWidth;
+    //The sprites for the normal tiles, followed by the sprites for the ghost tiles, in
+    //TileType order, and last the garbage tile. All are rendered for the configuration
+    //they were built for.
+    private volatile Image[] sprites;
+    private volatile GraphicsConfiguration config;
+
+    private TileSprites(final int tileSize, final int shadeWidth) {
+        this.tileSize = tileSize;
+        this.shadeWidth = shadeWidth;
+    }
+
+    public static synchronized TileSprites forSize(final int tileSize, final int shadeWidth) {
+        //Panels drawing tiles of the same size and shading share one set of sprites.
+        //Tiles of a different size are rendered at that size rather than scaled, so each
+        //size gets a set of its own.
+        final long key = (long) tileSize << 32 | shadeWidth;
+        TileSprites sprites = SHARED.get(key);
+        if (sprites == null) {
+            sprites = new TileSprites(tileSize, shadeWidth);
+            SHARED.put(key, sprites);
+        }
+        return sprites;
+    }
+
+    public void draw(final Graphics g, final TileType type, final int x, final int y) {
+        g.drawImage(getSprites(g)[type.ordinal()], x, y, null);
+    }
+
+    public void drawColor(final Graphics g, final int color, final int x, final int y) {
+        //Draws a cell of a board's color plane (see BitBoard.getColor).
+        final Image[] images = getSprites(g);
+        g.drawImage(images[color == BitBoard.GARBAGE ? images.length - 1 : color - 1], x, y, null);
+    }
+
+    public void drawGhost(final Graphics g, final TileType type, final int x, final int y) {
+        g.drawImage(getSprites(g)[TYPES.length + type.ordinal()], x, y, null);
+    }
+
+    private Image[] getSprites(final Graphics g) {
+        //The sprites are compatible images for the configuration being drawn to, so that
+        //Java2D can keep them in video memory. If the panel moves to another screen (or
+        //is painted into an offscreen image), the sprites are rendered again for it.
+        final GraphicsConfiguration current = ((Graphics2D) g).getDeviceConfiguration();
+        Image[] images = sprites;
+        if (images == null || current != config) {
+            images = render(current);
+            this.sprites = images;
+            this.config = current;
+        }
+        return images;
+    }
+
+    private Image[] render(final GraphicsConfiguration gc) {
+        final Image[] images = new Image[TYPES.length * 2 + 1];
+        for (final TileType type : TYPES) {
+            images[type.ordinal()] = render(gc, Transparency.OPAQUE, type.getBaseColor(), type.getLightColor(),
+                    type.getDarkColor());
+
+            //The ghost is a semi-transparent version of the piece that shows where the
+            //current piece will land.
+            Color base = type.getBaseColor();
+            int alpha = 20;
+            if (type == TileType.TypeJ || type == TileType.TypeT) {
+                alpha = 40;
+            }
+            base = new Color(base.getRed(), base.getGreen(), base.getBlue(), alpha);
+            images[TYPES.length + type.ordinal()] = render(gc, Transparency.TRANSLUCENT, base, base.brighter(),
+                    base.darker());
+        }
+        images[images.length - 1] = render(gc, Transparency.OPAQUE, GARBAGE_COLOR, GARBAGE_COLOR.brighter(),
+                GARBAGE_COLOR.darker());
+        return images;
+    }
+
+    private Image render(final GraphicsConfiguration gc, final int transparency, final Color base,
+            final Color light, final Color dark) {
+        final BufferedImage image = gc != null ? gc.createCompatibleImage(tileSize, tileSize, transparency)
+                : new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_ARGB);
+        final Graphics g = image.getGraphics();
+
+        //Fill the entire tile with the base color.
+        g.setColor(base);
+        g.fillRect(0, 0, tileSize, tileSize);
+
+        //Fill the bottom and right edges of the tile with the dark shading color.
+        g.setColor(dark);
+        g.fillRect(0, tileSize - shadeWidth, tileSize, shadeWidth);
+        g.fillRect(tileSize - shadeWidth, 0, shadeWidth, tileSize);
+
+        //Fill the top and left edges with the light shading. We draw a single line
+        //for each row or column rather than a rectangle so that we can draw a nice
+        //looking diagonal where the light and dark shading meet.
+        g.setColor(light);
+        for (int i = 0; i < shadeWidth; i++) {
+            g.drawLine(0, i, tileSize - i - 1, i);
+            g.drawLine(i, 0, i, tileSize - i - 1);
+        }
+        g.dispose();
+        return image;
+    }
+}
@@ -173,6 +173,17 @@ public enum TileType {
     private final int rows;
     private final int cols;
     private final boolean[][] tiles;
+    //Everything below is derived from the tiles once, when the enum is initialized,
+    //so the hot paths never have to scan the boolean grids.
+    private final int[][] rowMasks;
+    private final int[][] cellXs;
+    private final int[][] cellYs;
+    private final int[] leftInsets;
+    private final int[] rightInsets;
+    private final int[] topInsets;
+    private final int[] bottomInsets;
+    private final int[][] columnBottoms;
+    private final int[][][] kicks;
 
     TileType(final Color color, final int dimension, final int cols, final int rows, final boolean[][] tiles) {
         this.baseColor = color;
@@ -182,6 +193,64 @@ public enum TileType {
         this.tiles = tiles;
         this.cols = cols;
         this.rows = rows;
+
+        final int rotations = tiles.length;
+        this.rowMasks = new int[rotations][dimension];
+        this.cellXs = new int[rotations][];
+        this.cellYs = new int[rotations][];
+        this.leftInsets = new int[rotations];
+        this.rightInsets = new int[rotations];
+        this.topInsets = new int[rotations];
+        this.bottomInsets = new int[rotations];
+        this.columnBottoms = new int[rotations][dimension];
+        for (int rotation = 0; rotation < rotations; rotation++) {
+            int count = 0;
+            for (int y = 0; y < dimension; y++) {
+                for (int x = 0; x < dimension; x++) {
+                    if (isTile(x, y, rotation)) {
+                        rowMasks[rotation][y] |= 1 << x;
+                        count++;
+                    }
+                }
+            }
+
+            //The lowest tile of every column, or -1 if the column is empty.
+            for (int x = 0; x < dimension; x++) {
+                columnBottoms[rotation][x] = -1;
+                for (int y = 0; y < dimension; y++) {
+                    if (isTile(x, y, rotation)) {
+                        columnBottoms[rotation][x] = y;
+                    }
+                }
+            }
+
+            //The cells are stored in row-major order, top to bottom.
+            cellXs[rotation] = new int[count];
+            cellYs[rotation] = new int[count];
+            int left = dimension;
+            int right = -1;
+            int top = dimension;
+            int bottom = -1;
+            count = 0;
+            for (int y = 0; y < dimension; y++) {
+                for (int x = 0; x < dimension; x++) {
+                    if (isTile(x, y, rotation)) {
+                        cellXs[rotation][count] = x;
+                        cellYs[rotation][count] = y;
+                        count++;
+                        left = Math.min(left, x);
+                        right = Math.max(right, x);
+                        top = Math.min(top, y);
+                        bottom = Math.max(bottom, y);
+                    }
+                }
+            }
+            leftInsets[rotation] = count == 0 ? -1 : left;
+            rightInsets[rotation] = count == 0 ? -1 : dimension - right;
+            topInsets[rotation] = count == 0 ? -1 : top;
+            bottomInsets[rotation] = count == 0 ? -1 : dimension - bottom;
+        }
+        this.kicks = dimension == 4 ? Kicks.I : dimension == 3 ? Kicks.JLSTZ : Kicks.O;
         this.spawnCol = 5 - (dimension >> 1);
         this.spawnRow = getTopInset(0);
     }
@@ -222,47 +291,80 @@ public enum TileType {
         return tiles[rotation][y * dimension + x];
     }
 
+    public int getRowMask(final int rotation, final int y) {
+        return rowMasks[rotation][y];
+    }
+
+    public int getCellCount(final int rotation) {
+        return cellXs[rotation].length;
+    }
+
+    public int getCellX(final int rotation, final int cell) {
+        return cellXs[rotation][cell];
+    }
+
+    public int getCellY(final int rotation, final int cell) {
+        return cellYs[rotation][cell];
+    }
+
     public int getLeftInset(final int rotation) {
-        for (int x = 0; x < dimension; x++) {
-            for (int y = 0; y < dimension; y++) {
-                if (isTile(x, y, rotation)) {
-                    return x;
-                }
-            }
-        }
-        return -1;
+        return leftInsets[rotation];
     }
 
     public int getRightInset(final int rotation) {
-        for (int x = dimension - 1; x >= 0; x--) {
-            for (int y = 0; y < dimension; y++) {
-                if (isTile(x, y, rotation)) {
-                    return dimension - x;
-                }
-            }
-        }
-        return -1;
+        return rightInsets[rotation];
     }
 
     public int getTopInset(final int rotation) {
-        for (int y = 0; y < dimension; y++) {
-            for (int x = 0; x < dimension; x++) {
-                if (isTile(x, y, rotation)) {
-                    return y;
-                }
-            }
-        }
-        return -1;
+        return topInsets[rotation];
     }
 
     public int getBottomInset(final int rotation) {
-        for (int y = dimension - 1; y >= 0; y--) {
-            for (int x = 0; x < dimension; x++) {
-                if (isTile(x, y, rotation)) {
-                    return dimension - y;
-                }
-            }
-        }
-        return -1;
+        return bottomInsets[rotation];
+    }
+
+    public int getColumnBottom(final int rotation, final int x) {
+        return columnBottoms[rotation][x];
+    }
+
+    public int getKickCount(final int rotation, final int newRotation) {
+        return kicks[rotation][newRotation].length >> 1;
+    }
+
+    public int getKickX(final int rotation, final int newRotation, final int kick) {
+        return kicks[rotation][newRotation][kick << 1];
+    }
+
+    public int getKickY(final int rotation, final int newRotation, final int kick) {
+        return kicks[rotation][newRotation][(kick << 1) + 1];
+    }
+
+    //The SRS wall kick offsets, indexed by [from][to] rotation and stored as (x, y)
+    //pairs. The y offsets are flipped from the usual tables since rows grow downwards
+    //here. Only rotations between neighbouring states have kicks besides the (0, 0) test.
+    private static final class Kicks {
+
+        private static final int[] NONE = {0, 0};
+
+        private static final int[][][] JLSTZ = {
+                {NONE, {0, 0, -1, 0, -1, -1, 0, 2, -1, 2}, NONE, {0, 0, 1, 0, 1, -1, 0, 2, 1, 2}},
+                {{0, 0, 1, 0, 1, 1, 0, -2, 1, -2}, NONE, {0, 0, 1, 0, 1, 1, 0, -2, 1, -2}, NONE},
+                {NONE, {0, 0, -1, 0, -1, -1, 0, 2, -1, 2}, NONE, {0, 0, 1, 0, 1, -1, 0, 2, 1, 2}},
+                {{0, 0, -1, 0, -1, 1, 0, -2, -1, -2}, NONE, {0, 0, -1, 0, -1, 1, 0, -2, -1, -2}, NONE},
+        };
+
+        private static final int[][][] I = {
+                {NONE, {0, 0, -2, 0, 1, 0, -2, 1, 1, -2}, NONE, {0, 0, -1, 0, 2, 0, -1, -2, 2, 1}},
+                {{0, 0, 2, 0, -1, 0, 2, -1, -1, 2}, NONE, {0, 0, -1, 0, 2, 0, -1, -2, 2, 1}, NONE},
+                {NONE, {0, 0, 1, 0, -2, 0, 1, 2, -2, -1}, NONE, {0, 0, 2, 0, -1, 0, 2, -1, -1, 2}},
+                {{0, 0, 1, 0, -2, 0, 1, 2, -2, -1}, NONE, {0, 0, -2, 0, 1, 0, -2, 1, 1, -2}, NONE},
+        };
+
+        private static final int[][][] O = {
+                {NONE, NONE, NONE, NONE},
+                {NONE, NONE, NONE, NONE},
+                {NONE, NONE, NONE, NONE},
+                {NONE, NONE, NONE, NONE},
+        };
     }
 }
@@ -0,0 +1,29 @@
+public class UniformGenerator implements PieceGenerator {
+
+    private static final int TYPE_COUNT = TileType.values().length;
+    private final Rng random;
+
+    public UniformGenerator(final Rng random) {
+        this.random = random;
+    }
+
+    @Override
+    public int next() {
+        return random.nextInt(TYPE_COUNT);
+    }
+
+    @Override
+    public void reset() {
+        //Nothing is remembered between pieces.
+    }
+
+    @Override
+    public void save(final Snapshot snapshot) {
+        //The Rng is saved by the engine, and there's nothing else.
+    }
+
+    @Override
+    public void load(final Snapshot snapshot) {
+        //The Rng is loaded by the engine, and there's nothing else.
+    }
+}
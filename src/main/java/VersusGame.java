@@ -0,0 +1,92 @@
+public class VersusGame implements GameListener {
+
+    //The garbage rows sent for clearing 0, 1, 2, 3 or 4 lines at once.
+    private static final int[] ATTACK = {0, 0, 1, 2, 4};
+    private static final Input[] INPUTS = Input.values();
+    private final VersusLink link;
+    //A copy of the opponent's game, played from the inputs and garbage it sends us. It
+    //runs a little behind the real one, by however long the messages take to arrive.
+    private final GameEngine opponent;
+    //Picks the hole column of the garbage we send. It's kept apart from the engine's own
+    //generator so attacking doesn't change which pieces we get.
+    private final Rng holes;
+
+    public VersusGame(final VersusLink link, final long seed, final long opponentSeed) {
+        this.link = link;
+        this.opponent = new GameEngine(opponentSeed);
+        this.holes = new Rng(~seed);
+    }
+
+    public void receive(final GameEngine engine) {
+        //Called at the start of every tick, before any input is applied. Garbage from
+        //the opponent goes into our game right away, and is passed back so their copy
+        //of our game takes it at the same tick. Everything else moves their game on, and
+        //has to arrive at the tick it was stamped with, or the two games have come apart.
+        while (link.hasMessage() && !link.isClosed()) {
+            final long message = link.poll();
+            final int type = VersusLink.getType(message);
+            final int a = VersusLink.getA(message);
+            final int b = VersusLink.getB(message);
+            if (type != VersusLink.ATTACK && !isInStep(VersusLink.getTick(message))) {
+                System.err.println("Versus game out of step at tick " + VersusLink.getTick(message));
+                link.close();
+                return;
+            }
+            switch (type) {
+                case VersusLink.ATTACK:
+                    engine.addGarbage(a, b);
+                    link.send(VersusLink.GARBAGE, engine.getTick(), a, b);
+                    break;
+                case VersusLink.INPUT:
+                    opponent.handleInput(INPUTS[a]);
+                    break;
+                case VersusLink.GARBAGE:
+                    opponent.addGarbage(a, b);
+                    break;
+                case VersusLink.FRAME:
+                    opponent.step();
+                    break;
+            }
+        }
+    }
+
+    private boolean isInStep(final long tick) {
+        //Only the low 32 bits of a tick are sent, which is plenty to tell the two apart.
+        return tick == (opponent.getTick() & 0xFFFFFFFFL);
+    }
+
+    public void sendInput(final GameEngine engine, final Input input) {
+        link.send(VersusLink.INPUT, engine.getTick(), input.ordinal(), 0);
+    }
+
+    @Override
+    public void onEvents(final GameEngine engine, final GameEvents events) {
+        //Listens to our own game. Clearing more than one line at once sends garbage to
+        //the opponent, ahead of the frame the clear happened in.
+        if (engine.isGameOver()) {
+            return;
+        }
+        for (int i = 0; i < events.size(); i++) {
+            if (events.getEvent(i) == GameEvent.LINES_CLEARED) {
+                final int attack = ATTACK[Math.min(events.getA(i), ATTACK.length - 1)];
+                if (attack > 0) {
+                    link.send(VersusLink.ATTACK, engine.getTick(), attack, holes.nextInt(BitBoard.COL_COUNT));
+                }
+            }
+        }
+    }
+
+    public void stepped(final GameEngine engine) {
+        //Called after every step, to let the opponent's copy of our game take it too.
+        link.send(VersusLink.FRAME, engine.getTick() - 1, 0, 0);
+        link.flush();
+    }
+
+    public GameEngine getOpponent() {
+        return opponent;
+    }
+
+    public boolean isConnected() {
+        return !link.isClosed();
+    }
+}
@@ -0,0 +1,293 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.locks.LockSupport;
+
+
+public class VersusLink implements Runnable {
+
+    //The messages the two games exchange. On the wire, each is a type byte followed by
+    //its fields, big endian. Inside the game, every message but HELLO is packed into a
+    //long so it can pass between threads through a MessageQueue without allocating.
+    //HELLO - The sender's seed, sent once as soon as the connection is made.
+    public static final int HELLO = 0;
+    //INPUT - An input the sender applied before the given tick.
+    public static final int INPUT = 1;
+    //GARBAGE - Garbage rows (count, hole) the sender took before the given tick.
+    public static final int GARBAGE = 2;
+    //ATTACK - Garbage rows (count, hole) the sender wants the receiver to take.
+    public static final int ATTACK = 3;
+    //FRAME - The sender stepped its engine through the given tick.
+    public static final int FRAME = 4;
+    private static final int[] SIZES = {9, 6, 7, 3, 5};
+    private static final int INPUT_COUNT = Input.values().length;
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final int BUFFER_SIZE = 8192;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private SocketChannel channel;
+    private final long seed;
+    private final MessageQueue outgoing;
+    private final MessageQueue incoming;
+    private final ByteBuffer readBuffer;
+    private final ByteBuffer writeBuffer;
+    private final Thread thread;
+    private volatile long peerSeed;
+    private volatile boolean isConnected;
+    private volatile boolean isClosed;
+
+    private VersusLink(final ServerSocketChannel server, final SocketChannel channel, final long seed)
+            throws IOException {
+        this.selector = Selector.open();
+        this.server = server;
+        this.channel = channel;
+        this.seed = seed;
+        this.outgoing = new MessageQueue(QUEUE_CAPACITY);
+        this.incoming = new MessageQueue(QUEUE_CAPACITY);
+        this.readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        if (server != null) {
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } else {
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_CONNECT);
+        }
+        this.thread = new Thread(this, "Tetris Versus");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static VersusLink host(final int port, final long seed) throws IOException {
+        final ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        return new VersusLink(server, null, seed);
+    }
+
+    public static VersusLink connect(final String host, final int port, final long seed) throws IOException {
+        final SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.connect(new InetSocketAddress(host, port));
+        return new VersusLink(null, channel, seed);
+    }
+
+    public long awaitPeer() {
+        //Blocks until the other game has said hello, and returns its seed.
+        while (!isConnected) {
+            if (isClosed) {
+                throw new IllegalStateException("Could not connect to the opponent");
+            }
+            LockSupport.parkNanos(1000000L);
+        }
+        return peerSeed;
+    }
+
+    public void send(final int type, final long tick, final int a, final int b) {
+        //Called from the game loop. The queue only fills up if the connection has been
+        //stuck for many seconds, at which point it's as good as gone anyway.
+        if (!outgoing.offer(pack(type, tick, a, b))) {
+            close();
+        }
+    }
+
+    public void flush() {
+        //Called once per frame, after all of the frame's messages have been sent.
+        selector.wakeup();
+    }
+
+    public boolean hasMessage() {
+        return !incoming.isEmpty();
+    }
+
+    public long poll() {
+        return incoming.poll();
+    }
+
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!isClosed) {
+                selector.select();
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isConnectable()) {
+                        if (channel.finishConnect()) {
+                            connected();
+                        }
+                    } else if (key.isReadable()) {
+                        read();
+                    }
+                }
+                if (channel != null && channel.isConnected()) {
+                    write();
+                }
+            }
+        } catch (final IOException e) {
+            System.err.println("Versus connection lost: " + e);
+        }
+        close();
+    }
+
+    private void accept() throws IOException {
+        //Only one opponent is needed, so stop listening as soon as one connects.
+        final SocketChannel accepted = server.accept();
+        if (accepted == null) {
+            return;
+        }
+        server.close();
+        this.channel = accepted;
+        accepted.configureBlocking(false);
+        connected();
+    }
+
+    private void connected() throws IOException {
+        //Small messages should leave right away rather than wait to be batched.
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.register(selector, SelectionKey.OP_READ);
+        writeBuffer.put((byte) HELLO).putLong(seed);
+    }
+
+    private void read() throws IOException {
+        if (channel.read(readBuffer) < 0) {
+            throw new IOException("Closed by the opponent");
+        }
+        readBuffer.flip();
+        while (readBuffer.hasRemaining()) {
+            final int type = readBuffer.get(readBuffer.position());
+            if (type < 0 || type >= SIZES.length) {
+                throw new IOException("Bad message type: " + type);
+            }
+            if (readBuffer.remaining() < SIZES[type]) {
+                break;
+            }
+            readBuffer.get();
+            final int tick = type == INPUT || type == GARBAGE || type == FRAME ? readBuffer.getInt() : 0;
+            switch (type) {
+                case HELLO:
+                    this.peerSeed = readBuffer.getLong();
+                    this.isConnected = true;
+                    break;
+                case INPUT: {
+                    final int input = readBuffer.get();
+                    if (input < 0 || input >= INPUT_COUNT) {
+                        throw new IOException("Bad input: " + input);
+                    }
+                    receive(pack(type, tick, input, 0));
+                    break;
+                }
+                case GARBAGE:
+                case ATTACK: {
+                    final int count = readBuffer.get();
+                    final int hole = readBuffer.get();
+                    checkGarbage(count, hole);
+                    receive(pack(type, tick, count, hole));
+                    break;
+                }
+                case FRAME:
+                    receive(pack(type, tick, 0, 0));
+                    break;
+            }
+        }
+        readBuffer.compact();
+    }
+
+    private static void checkGarbage(final int count, final int hole) throws IOException {
+        //The garbage goes straight into our own game, where anything that doesn't fit on
+        //the board would crash it. Only a broken or hostile opponent sends that, so the
+        //connection ends instead.
+        if (count <= 0 || count > BitBoard.ROW_COUNT || hole < 0 || hole >= BitBoard.COL_COUNT) {
+            throw new IOException("Bad garbage: " + count + " rows, hole at " + hole);
+        }
+    }
+
+    private void receive(final long message) throws IOException {
+        //Losing a single message would leave our copy of the opponent's game wrong for
+        //the rest of the match, so a full queue ends the connection instead, just like
+        //it does when sending.
+        if (!incoming.offer(message)) {
+            throw new IOException("Fell too far behind the opponent");
+        }
+    }
+
+    private void write() throws IOException {
+        //Move as many queued messages into the buffer as will fit, then write as much as
+        //the socket takes. Whatever's left waits for the socket to have room again.
+        while (!outgoing.isEmpty() && writeBuffer.remaining() >= SIZES[FRAME] + 2) {
+            final long message = outgoing.poll();
+            final int type = getType(message);
+            writeBuffer.put((byte) type);
+            switch (type) {
+                case INPUT:
+                    writeBuffer.putInt((int) getTick(message)).put((byte) getA(message));
+                    break;
+                case GARBAGE:
+                    writeBuffer.putInt((int) getTick(message)).put((byte) getA(message)).put((byte) getB(message));
+                    break;
+                case ATTACK:
+                    writeBuffer.put((byte) getA(message)).put((byte) getB(message));
+                    break;
+                default:
+                    writeBuffer.putInt((int) getTick(message));
+                    break;
+            }
+        }
+        writeBuffer.flip();
+        channel.write(writeBuffer);
+        final SelectionKey key = channel.keyFor(selector);
+        key.interestOps(writeBuffer.hasRemaining() || !outgoing.isEmpty()
+                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        writeBuffer.compact();
+    }
+
+    public void close() {
+        if (isClosed) {
+            return;
+        }
+        this.isClosed = true;
+        selector.wakeup();
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            if (server != null) {
+                server.close();
+            }
+        } catch (final IOException e) {
+            //We're giving up on the connection anyway.
+        }
+    }
+
+    private static long pack(final int type, final long tick, final int a, final int b) {
+        return (long) type << 56 | (tick & 0xFFFFFFFFL) << 16 | (a & 0xFF) << 8 | (b & 0xFF);
+    }
+
+    public static int getType(final long message) {
+        return (int) (message >>> 56);
+    }
+
+    public static long getTick(final long message) {
+        return message >>> 16 & 0xFFFFFFFFL;
+    }
+
+    public static int getA(final long message) {
+        return (int) (message >>> 8 & 0xFF);
+    }
+
+    public static int getB(final long message) {
+        return (int) (message & 0xFF);
+    }
+}
@@ -0,0 +1,104 @@
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+
+public class PaintAllocationCheck {
+
+    //Run by the build (mvn test) so that an allocation creeping back into the paint path
+    //fails it, without anyone having to run the benchmarks. Each panel paints a game
+    //that moves on by a tick and is published before every paint, first to warm up,
+    //then measured. Like the benchmarks, a fraction of a byte per paint is let through
+    //for the measuring. Publishing is counted too, since the game loop does it once a
+    //frame.
+    private static final int WARM_UP_PAINTS = 10000;
+    private static final int MEASURED_PAINTS = 5000;
+    private static final double ALLOCATION_LIMIT = 0.5;
+    private static final long SEED = 42L;
+
+    private interface Painter {
+
+        void paint(Graphics2D g);
+    }
+
+    public static void main(final String[] args) {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("Skipped the paint allocation check, this JVM can't count allocations");
+            return;
+        }
+        boolean failed = false;
+
+        final GameEngine boardGame = new GameEngine(SEED);
+        final SharedFrame boardShown = new SharedFrame();
+        final BoardPanel board = new BoardPanel(boardGame, boardShown);
+        failed |= !check("BoardPanel", boardGame, boardShown, board, board::paintComponent, null);
+
+        final GameEngine overlayGame = new GameEngine(SEED);
+        final SharedFrame overlayShown = new SharedFrame();
+        final BoardPanel overlay = new BoardPanel(overlayGame, overlayShown);
+        final PerfStats stats = new PerfStats();
+        stats.toggleVisible();
+        overlay.setStats(stats);
+        failed |= !check("BoardPanel with overlay", overlayGame, overlayShown, overlay, overlay::paintComponent, stats);
+
+        final GameEngine sideGame = new GameEngine(SEED);
+        final SharedFrame sideShown = new SharedFrame();
+        final SidePanel side = new SidePanel(sideGame, sideShown);
+        failed |= !check("SidePanel", sideGame, sideShown, side, side::paintComponent, null);
+
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean check(final String name, final GameEngine engine, final SharedFrame shown,
+            final Component panel,
+            final Painter painter, final PerfStats stats) {
+        //The computer player's inputs are worked out up front on a game of its own with
+        //the same seed, so playing them back allocates nothing.
+        final Input[] inputs = playInputs(WARM_UP_PAINTS + MEASURED_PAINTS);
+        panel.setSize(panel.getPreferredSize());
+        final BufferedImage image = new BufferedImage(panel.getWidth(), panel.getHeight(), BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = image.createGraphics();
+        final AffineTransform identity = new AffineTransform();
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+
+        long before = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            if (i == WARM_UP_PAINTS) {
+                before = threads.getThreadAllocatedBytes(thread);
+            }
+            if (stats != null) {
+                stats.recordFrame(System.nanoTime(), 0, 1, 0);
+            }
+            engine.step(inputs[i]);
+            shown.publish(engine);
+            g.setTransform(identity);
+            painter.paint(g);
+        }
+        final double perPaint = (threads.getThreadAllocatedBytes(thread) - before) / (double) MEASURED_PAINTS;
+        g.dispose();
+        if (perPaint > ALLOCATION_LIMIT) {
+            System.err.printf(Locale.ROOT, "%s allocates %.1f bytes per paint, expected none%n", name, perPaint);
+            return false;
+        }
+        System.out.printf(Locale.ROOT, "%s allocates %.2f bytes per paint%n", name, perPaint);
+        return true;
+    }
+
+    private static Input[] playInputs(final int ticks) {
+        final GameEngine player = new GameEngine(SEED);
+        final AiPolicy ai = new AiPolicy();
+        final Input[] inputs = new Input[ticks];
+        for (int i = 0; i < ticks; i++) {
+            final Input input = player.isNewGame() || player.isGameOver() ? Input.START : ai.nextInput(player);
+            inputs[i] = input;
+            player.step(input);
+        }
+        return inputs;
+    }
+}